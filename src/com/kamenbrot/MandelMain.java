@@ -1,12 +1,10 @@
 package com.kamenbrot;
 
 import com.kamenbrot.fractals.ComplexMapping;
-import com.kamenbrot.generators.MandelbrotBlockImageGenerator;
 import com.kamenbrot.generators.PanelRenderer;
+import com.kamenbrot.generators.RenderScheduler;
 import com.kamenbrot.state.ColourState;
 import com.kamenbrot.state.GenericMandelState;
-import com.kamenbrot.state.MandelDoubleDoubleState;
-import com.kamenbrot.state.MandelDoubleState;
 import com.kamenbrot.state.MandelState;
 import com.kamenbrot.state.PaletteState;
 import com.kamenbrot.ui.MandelKeyListener;
@@ -22,13 +20,9 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ForkJoinPool;
 
 public class MandelMain {
 
-    public static final int PRECISION_SWITCH_ZOOM_LEVEL = 32;
-
     public static void main(String[] args) {
         final JFrame frame = new JFrame("Mandelbrot Set");
         final JLayeredPane lpane = new JLayeredPane();
@@ -36,18 +30,20 @@ public class MandelMain {
         frame.add(lpane, BorderLayout.CENTER);
         lpane.setLayout(null);
 
-        final ForkJoinPool pool = (ForkJoinPool) Executors.newWorkStealingPool();
-        final PanelRenderer renderer = new PanelRenderer();
+        final RenderScheduler scheduler = RenderScheduler.shared();
+        // a render thread per view, the preview would otherwise wait for the frame of the main view to finish
+        final PanelRenderer renderer = new PanelRenderer("render-main");
+        final PanelRenderer previewRenderer = new PanelRenderer("render-preview");
         final PaletteState paletteState = new PaletteState();
         final Color[] palette = paletteState.getNextPalette();
-        final ProperMandelbrotPanel panel = new ProperMandelbrotPanel(pool, renderer, paletteState);
+        final ProperMandelbrotPanel panel = new ProperMandelbrotPanel(scheduler.pool(RenderScheduler.Priority.FOREGROUND), renderer, paletteState);
 
         final int mandelWidth = panel.getMandelState().getMandelWidth();
         final int mandelHeight = panel.getMandelState().getMandelHeight();
         final int miniWidth = (int) (mandelWidth * 0.25);
         final int miniHeight = (int) (mandelHeight * 0.25);
 
-        final MiniPanel miniPanel = new MiniPanel(panel.getPanelState(), pool, miniWidth, miniHeight, new ColourState(palette), renderer);
+        final MiniPanel miniPanel = new MiniPanel(panel.getPanelState(), scheduler.pool(RenderScheduler.Priority.PREVIEW), miniWidth, miniHeight, new ColourState(palette), previewRenderer);
         panel.setOpaque(true);
         panel.setBounds(0, 0, mandelWidth, mandelHeight);
         miniPanel.setOpaque(true);
@@ -72,12 +68,7 @@ public class MandelMain {
                     panel.setPreferredSize(new Dimension(aspectW * h / aspectH, h));
                 }
                 frame.validate();
-                panel.getPanelState().setWidthAndHeight(w, h);
-                panel.getImageGenerator().resizeImage(w, h);
-                panel.getMandelState().setMandelWidth(w);
-                panel.getMandelState().setMandelHeight(h);
-                panel.getImageGenerator().generateImage();
-                panel.repaint();
+                panel.resizeView(w, h);
             }
 
         });
@@ -90,6 +81,12 @@ public class MandelMain {
 
         final MouseAdapter mouseAdapter = new MouseAdapter() {
 
+            /**
+             * Last position of the mouse while dragging the view
+             */
+            private int dragX;
+            private int dragY;
+
             @Override
             public void mouseMoved(MouseEvent e) {
                 if (panel.getMandelState().isJuliaToggled() || panel.getMandelState().isSaveToggled()) return;
@@ -100,30 +97,38 @@ public class MandelMain {
                 miniPanel.setNeedsRender();
             }
 
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                final MandelState state = panel.getMandelState();
+                panel.pan(e.getX() - state.getMandelWidth() / 2, e.getY() - state.getMandelHeight() / 2);
+            }
+
             @Override
             public void mousePressed(MouseEvent e) {
-                panel.getMandelState().setCenter(e.getX(), e.getY());
-                panel.setNeedsRender();
+                dragX = e.getX();
+                dragY = e.getY();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                // the view follows the mouse
+                panel.pan(dragX - e.getX(), dragY - e.getY());
+                dragX = e.getX();
+                dragY = e.getY();
             }
 
             @Override
             public void mouseWheelMoved(MouseWheelEvent e) {
-                final MandelState state = panel.getMandelState();
-                if (e.getPreciseWheelRotation() < 0) {
-                    panel.getMandelState().zoomIn(panel.getPanelState().getJourneyUnits());
-                } else {
-                    state.zoomOut(panel.getPanelState().getZoomUnits());
-                }
-                if (state instanceof MandelDoubleState cast && state.getCurrentZoom() > PRECISION_SWITCH_ZOOM_LEVEL) {
-                    final MandelState newMandelState = new MandelDoubleDoubleState(cast);
-                    panel.setMandelState(newMandelState);
-                    panel.setImageGenerator(new MandelbrotBlockImageGenerator(panel.getImageGenerator(), newMandelState, panel.getPanelState(), panel.getColorState()));
-                } else if (state instanceof MandelDoubleDoubleState cast && state.getCurrentZoom() <= PRECISION_SWITCH_ZOOM_LEVEL) {
-                    final MandelState newMandelState = new MandelDoubleState(cast);
-                    panel.setMandelState(newMandelState);
-                    panel.setImageGenerator(new MandelbrotBlockImageGenerator(panel.getImageGenerator(), newMandelState, panel.getPanelState(), panel.getColorState()));
-                }
-                panel.setNeedsRender();
+                final boolean zoomIn = e.getPreciseWheelRotation() < 0;
+                panel.beginInteraction();
+                panel.changeView(() -> {
+                    if (zoomIn) {
+                        panel.getMandelState().zoomIn(panel.getPanelState().getJourneyUnits());
+                    } else {
+                        panel.getMandelState().zoomOut(panel.getPanelState().getZoomUnits());
+                    }
+                    panel.updatePrecision();
+                });
             }
         };
         panel.addMouseListener(mouseAdapter);
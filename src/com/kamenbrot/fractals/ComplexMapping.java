@@ -9,6 +9,70 @@ public class ComplexMapping {
     return min + (double) value / limit * (max - min);
   }
 
+  /**
+   * @return {@link #mapComplex(int, int, double, double)} of every value below the limit, a coordinate per column or row
+   */
+  public static double[] mapComplex(int limit, double min, double max) {
+    final double[] values = new double[limit];
+    for (int i = 0; i < limit; i++) {
+      values[i] = mapComplex(i, limit, min, max);
+    }
+    return values;
+  }
+
+  /**
+   * Double-double version of {@link #mapComplex(int, double, double)}, the hi part of every value at an even index and
+   * its lo part right after it
+   */
+  public static double[] mapComplex(int limit, DoubleDouble min, DoubleDouble max) {
+    final DoubleDouble doubleLimit = DoubleDouble.valueOf(limit);
+    final double[] values = new double[2 * limit];
+    for (int i = 0; i < limit; i++) {
+      final DoubleDouble value = mapComplexOptimised(DoubleDouble.valueOf(i), doubleLimit, min, max);
+      values[2 * i] = value.getHi();
+      values[2 * i + 1] = value.getLo();
+    }
+    return values;
+  }
+
+  /**
+   * Moves the coordinates of {@link #mapComplex(int, double, double)} by whole values for the new bounds. The ones
+   * still within the limit are kept exactly as they were, only the ones moved in are mapped.
+   *
+   * @param offset value of the old coordinates that becomes value 0
+   */
+  public static double[] shift(double[] values, int offset, double min, double max) {
+    final int limit = values.length;
+    final double[] shifted = new double[limit];
+    for (int i = 0; i < limit; i++) {
+      final int from = i + offset;
+      shifted[i] = from >= 0 && from < limit ? values[from] : mapComplex(i, limit, min, max);
+    }
+    return shifted;
+  }
+
+  /**
+   * Double-double version of {@link #shift(double[], int, double, double)} for the layout of
+   * {@link #mapComplex(int, DoubleDouble, DoubleDouble)}
+   */
+  public static double[] shift(double[] values, int offset, DoubleDouble min, DoubleDouble max) {
+    final int limit = values.length / 2;
+    final DoubleDouble doubleLimit = DoubleDouble.valueOf(limit);
+    final double[] shifted = new double[values.length];
+    for (int i = 0; i < limit; i++) {
+      final int from = i + offset;
+      if (from >= 0 && from < limit) {
+        shifted[2 * i] = values[2 * from];
+        shifted[2 * i + 1] = values[2 * from + 1];
+      } else {
+        final DoubleDouble value = mapComplexOptimised(DoubleDouble.valueOf(i), doubleLimit, min, max);
+        shifted[2 * i] = value.getHi();
+        shifted[2 * i + 1] = value.getLo();
+      }
+    }
+    return shifted;
+  }
+
   public static DoubleDouble mapComplex(DoubleDouble value, DoubleDouble limit, DoubleDouble min, DoubleDouble max) {
     final DoubleDouble fraction = value.div(limit);
     return min.add(fraction.mul(max.sub(min)));
@@ -0,0 +1,14 @@
+package com.kamenbrot.fractals;
+
+/**
+ * Distance estimation counterpart of {@link FractalKernel}, resolved once per frame by
+ * {@link FractalFormula#distanceKernel(com.kamenbrot.state.MandelState)}.
+ */
+@FunctionalInterface
+public interface DistanceKernel {
+
+    /**
+     * @return estimated distance of the pixel from the boundary, 0 if it is inside
+     */
+    double distance(int x, int y);
+}
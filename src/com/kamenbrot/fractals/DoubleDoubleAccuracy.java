@@ -0,0 +1,115 @@
+package com.kamenbrot.fractals;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * Checks the {@link DoubleDouble} arithmetic against {@link BigDecimal}. Every operation runs on random operands with
+ * a fixed seed, its worst relative error is printed in units of 2^-106 and the run fails if it exceeds the bound the
+ * algorithm is expected to keep.
+ * <p>
+ * Run with {@code java com.kamenbrot.fractals.DoubleDoubleAccuracy [samples] [seed]}.
+ */
+public final class DoubleDoubleAccuracy {
+
+    private static final int DEFAULT_SAMPLES = 200_000;
+    private static final long DEFAULT_SEED = 20261018L;
+    /**
+     * Worst error any operation may have, in units of 2^-106
+     */
+    private static final double BOUND = 4.0;
+    private static final MathContext EXACT = new MathContext(80);
+    private static final BigDecimal UNIT = new BigDecimal(Math.scalb(1.0, -106));
+
+    private final Random random;
+    private final int samples;
+
+    private DoubleDoubleAccuracy(int samples, long seed) {
+        this.samples = samples;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) {
+        final int samples = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SAMPLES;
+        final long seed = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_SEED;
+        final DoubleDoubleAccuracy accuracy = new DoubleDoubleAccuracy(samples, seed);
+
+        boolean passed = accuracy.check("add", DoubleDouble::add, BigDecimal::add);
+        passed &= accuracy.check("sub", DoubleDouble::sub, BigDecimal::subtract);
+        passed &= accuracy.check("mul", DoubleDouble::mul, BigDecimal::multiply);
+        passed &= accuracy.check("sqr", DoubleDouble::sqr, a -> a.multiply(a));
+        passed &= accuracy.check("div", DoubleDouble::div, (a, b) -> a.divide(b, EXACT));
+        passed &= accuracy.checkMapComplex();
+        if (!passed) System.exit(1);
+    }
+
+    private boolean check(String name, BinaryOperator<DoubleDouble> operation, BinaryOperator<BigDecimal> exact) {
+        double worst = 0.0;
+        for (int i = 0; i < samples; i++) {
+            final DoubleDouble a = operand();
+            final DoubleDouble b = operand();
+            final BigDecimal expected = exact.apply(a.toBigDecimal(), b.toBigDecimal());
+            worst = Math.max(worst, error(operation.apply(a, b), expected, expected));
+        }
+        return report(name, worst);
+    }
+
+    private boolean check(String name, UnaryOperator<DoubleDouble> operation, UnaryOperator<BigDecimal> exact) {
+        double worst = 0.0;
+        for (int i = 0; i < samples; i++) {
+            final DoubleDouble a = operand();
+            final BigDecimal expected = exact.apply(a.toBigDecimal());
+            worst = Math.max(worst, error(operation.apply(a), expected, expected));
+        }
+        return report(name, worst);
+    }
+
+    /**
+     * Maps pixels of a view the way the coordinate tables do, the error is relative to the larger bound since the
+     * mapped value itself can be arbitrarily close to zero.
+     */
+    private boolean checkMapComplex() {
+        double worst = 0.0;
+        for (int i = 0; i < samples; i++) {
+            final int limit = 1 + random.nextInt(4096);
+            final DoubleDouble value = DoubleDouble.valueOf(random.nextInt(limit));
+            final DoubleDouble min = operand();
+            final DoubleDouble max = min.add(DoubleDouble.valueOf(Math.scalb(random.nextDouble(), -random.nextInt(80))));
+            final BigDecimal minExact = min.toBigDecimal();
+            final BigDecimal expected = minExact.add(value.toBigDecimal()
+                    .divide(BigDecimal.valueOf(limit), EXACT)
+                    .multiply(max.toBigDecimal().subtract(minExact)));
+            final BigDecimal scale = minExact.abs().max(max.toBigDecimal().abs());
+            worst = Math.max(worst, error(value.mapComplex(DoubleDouble.valueOf(limit), min, max), expected, scale));
+        }
+        return report("mapComplex", worst);
+    }
+
+    /**
+     * @return a normalised double-double in the range of the viewports, lo is random within half an ulp of hi
+     */
+    private DoubleDouble operand() {
+        final double hi = (random.nextDouble() * 4.0 - 2.0) * Math.scalb(1.0, -random.nextInt(8));
+        final double lo = (random.nextDouble() - 0.5) * Math.ulp(hi);
+        return DoubleDouble.valueOf(hi + lo, lo - ((hi + lo) - hi));
+    }
+
+    /**
+     * @return distance from the exact value relative to the scale, in units of 2^-106
+     */
+    private static double error(DoubleDouble actual, BigDecimal expected, BigDecimal scale) {
+        if (scale.signum() == 0) return actual.toBigDecimal().signum() == 0 ? 0.0 : Double.POSITIVE_INFINITY;
+        return actual.toBigDecimal().subtract(expected).abs()
+                .divide(scale.abs().multiply(UNIT), MathContext.DECIMAL64)
+                .doubleValue();
+    }
+
+    private static boolean report(String name, double worst) {
+        final boolean passed = worst <= BOUND;
+        System.out.printf("%-10s worst %6.2f ulp(2^-106) %s%n", name, worst, passed ? "ok" : "FAILED, bound " + BOUND);
+        return passed;
+    }
+}
@@ -0,0 +1,397 @@
+package com.kamenbrot.fractals;
+
+import java.io.Serial;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * Mutable two's complement fixed point number over {@code long} limbs. The limbs are little endian, the last one is
+ * the signed integer part and every limb before it holds 64 more fraction bits. The arithmetic writes into the
+ * receiver and only uses caller supplied scratch space so an iteration loop does not allocate.
+ * <p>
+ * Products are truncated: partial products that land entirely below the last fraction limb are skipped, which keeps
+ * the error within a few units of the last limb.
+ */
+public final class FixedPoint extends Number implements Comparable<FixedPoint> {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Fraction bits kept on top of the ones needed to resolve a pixel
+     */
+    private static final int GUARD_BITS = 64;
+    private static final int MIN_FRACTION_LIMBS = 2;
+    private static final double TWO_POW_64 = 0x1.0p64;
+    private static final double LOG2_10 = Math.log(10) / Math.log(2);
+
+    private final long[] limbs;
+    private final int fractionLimbs;
+
+    public FixedPoint(int fractionLimbs) {
+        this.fractionLimbs = fractionLimbs;
+        this.limbs = new long[fractionLimbs + 1];
+    }
+
+    public static FixedPoint valueOf(BigDecimal value, int fractionLimbs) {
+        return new FixedPoint(fractionLimbs).set(value);
+    }
+
+    public static FixedPoint valueOf(double value, int fractionLimbs) {
+        return valueOf(new BigDecimal(value), fractionLimbs);
+    }
+
+    /**
+     * @param pixelSpacing binary exponent of the pixel spacing
+     * @return number of fraction limbs that resolve the pixel spacing
+     */
+    public static int fractionLimbsFor(long pixelSpacing) {
+        final long bits = Math.max(0, -pixelSpacing) + GUARD_BITS;
+        return (int) Math.max(MIN_FRACTION_LIMBS, (bits + 63) / 64);
+    }
+
+    /**
+     * @param digits significant decimal digits
+     * @return number of fraction limbs holding at least as many bits
+     */
+    public static int fractionLimbsForDigits(int digits) {
+        return Math.max(MIN_FRACTION_LIMBS, (int) Math.ceil(digits * LOG2_10 / 64));
+    }
+
+    /**
+     * @return scratch space for {@link #mul(FixedPoint, FixedPoint, long[])} of numbers with the given fraction limbs
+     */
+    public static long[] newScratch(int fractionLimbs) {
+        return new long[4 * (fractionLimbs + 1)];
+    }
+
+    public int getFractionLimbs() {
+        return fractionLimbs;
+    }
+
+    /**
+     * @return copy of this with a different number of fraction limbs, extra limbs are zero and dropped ones truncated
+     */
+    public FixedPoint withFractionLimbs(int newFractionLimbs) {
+        final FixedPoint result = new FixedPoint(newFractionLimbs);
+        final int shift = newFractionLimbs - fractionLimbs;
+        for (int i = 0; i < result.limbs.length; i++) {
+            final int from = i - shift;
+            if (from >= 0 && from < limbs.length) result.limbs[i] = limbs[from];
+        }
+        return result;
+    }
+
+    /**
+     * this = 0
+     */
+    public FixedPoint clear() {
+        Arrays.fill(limbs, 0L);
+        return this;
+    }
+
+    public FixedPoint set(FixedPoint a) {
+        System.arraycopy(a.limbs, 0, limbs, 0, limbs.length);
+        return this;
+    }
+
+    public FixedPoint set(BigDecimal value) {
+        final BigInteger scaled = value.multiply(new BigDecimal(BigInteger.ONE.shiftLeft(64 * fractionLimbs)))
+                .setScale(0, RoundingMode.HALF_EVEN)
+                .toBigInteger();
+        for (int i = 0; i < limbs.length; i++) {
+            // shiftRight floors so the low 64 bits are the two's complement limb
+            limbs[i] = scaled.shiftRight(64 * i).longValue();
+        }
+        return this;
+    }
+
+    /**
+     * this = a + b
+     */
+    public FixedPoint add(FixedPoint a, FixedPoint b) {
+        long carry = 0;
+        for (int i = 0; i < limbs.length; i++) {
+            final long x = a.limbs[i];
+            final long s = x + b.limbs[i];
+            final long t = s + carry;
+            carry = (Long.compareUnsigned(s, x) < 0 ? 1 : 0) + (Long.compareUnsigned(t, s) < 0 ? 1 : 0);
+            limbs[i] = t;
+        }
+        return this;
+    }
+
+    /**
+     * this = a - b
+     */
+    public FixedPoint sub(FixedPoint a, FixedPoint b) {
+        long borrow = 0;
+        for (int i = 0; i < limbs.length; i++) {
+            final long x = a.limbs[i];
+            final long d = x - b.limbs[i];
+            final long t = d - borrow;
+            borrow = (Long.compareUnsigned(x, d) < 0 ? 1 : 0) + (Long.compareUnsigned(d, t) < 0 ? 1 : 0);
+            limbs[i] = t;
+        }
+        return this;
+    }
+
+    /**
+     * this = 2a
+     */
+    public FixedPoint twice(FixedPoint a) {
+        for (int i = limbs.length - 1; i > 0; i--) {
+            limbs[i] = (a.limbs[i] << 1) | (a.limbs[i - 1] >>> 63);
+        }
+        limbs[0] = a.limbs[0] << 1;
+        return this;
+    }
+
+    /**
+     * this = -a
+     */
+    public FixedPoint negate(FixedPoint a) {
+        negate(a.limbs, limbs, limbs.length);
+        return this;
+    }
+
+    /**
+     * this = a * b for a small integer b
+     */
+    public FixedPoint mul(FixedPoint a, long b) {
+        final boolean negative = a.isNegative() != (b < 0);
+        final long m = Math.abs(b);
+        long carry = 0;
+        final boolean negativeA = a.isNegative();
+        // |a| limb by limb, the two's complement negation is folded into the loop
+        long negateCarry = 1;
+        for (int i = 0; i < limbs.length; i++) {
+            long x = a.limbs[i];
+            if (negativeA) {
+                x = ~x + negateCarry;
+                negateCarry = negateCarry == 1 && x == 0 ? 1 : 0;
+            }
+            final long lo = x * m;
+            final long hi = Math.unsignedMultiplyHigh(x, m);
+            final long t = lo + carry;
+            carry = hi + (Long.compareUnsigned(t, lo) < 0 ? 1 : 0);
+            limbs[i] = t;
+        }
+        if (negative) negate(limbs, limbs, limbs.length);
+        return this;
+    }
+
+    /**
+     * this = a * b, a and b may be this
+     *
+     * @param scratch from {@link #newScratch(int)}
+     */
+    public FixedPoint mul(FixedPoint a, FixedPoint b, long[] scratch) {
+        final int length = limbs.length;
+        final boolean negativeA = a.isNegative();
+        final boolean negativeB = b.isNegative();
+        // |a| at 0, |b| at length, product at 2 * length
+        if (negativeA) negate(a.limbs, scratch, 0, length);
+        else System.arraycopy(a.limbs, 0, scratch, 0, length);
+        if (a == b) {
+            System.arraycopy(scratch, 0, scratch, length, length);
+        } else if (negativeB) {
+            negate(b.limbs, scratch, length, length);
+        } else {
+            System.arraycopy(b.limbs, 0, scratch, length, length);
+        }
+        final int product = 2 * length;
+        Arrays.fill(scratch, product, product + 2 * length, 0L);
+
+        // schoolbook on the magnitudes, partial products below limb n - 1 of the full product are skipped
+        final int n = fractionLimbs;
+        for (int i = 0; i < length; i++) {
+            final long y = scratch[length + i];
+            if (y == 0) continue;
+            long carry = 0;
+            for (int j = Math.max(0, n - 1 - i); j < length; j++) {
+                final long x = scratch[j];
+                final long lo = x * y;
+                final long hi = Math.unsignedMultiplyHigh(x, y);
+                final int k = product + i + j;
+                final long s = lo + scratch[k];
+                final long t = s + carry;
+                carry = hi + (Long.compareUnsigned(s, lo) < 0 ? 1 : 0) + (Long.compareUnsigned(t, s) < 0 ? 1 : 0);
+                scratch[k] = t;
+            }
+            scratch[product + i + length] = carry;
+        }
+        System.arraycopy(scratch, product + n, limbs, 0, length);
+        if (negativeA != negativeB) negate(limbs, limbs, length);
+        return this;
+    }
+
+    /**
+     * this = a * a, a may be this. Each cross product is computed once and doubled, about half the work of
+     * {@link #mul(FixedPoint, FixedPoint, long[])}.
+     *
+     * @param scratch from {@link #newScratch(int)}
+     */
+    public FixedPoint sqr(FixedPoint a, long[] scratch) {
+        final int length = limbs.length;
+        if (a.isNegative()) negate(a.limbs, scratch, 0, length);
+        else System.arraycopy(a.limbs, 0, scratch, 0, length);
+        final int product = 2 * length;
+        Arrays.fill(scratch, product, product + 2 * length, 0L);
+
+        final int n = fractionLimbs;
+        // cross products x_i * x_j for i < j
+        for (int i = 0; i < length - 1; i++) {
+            final long y = scratch[i];
+            if (y == 0) continue;
+            long carry = 0;
+            for (int j = Math.max(i + 1, n - 1 - i); j < length; j++) {
+                final long x = scratch[j];
+                final long lo = x * y;
+                final long hi = Math.unsignedMultiplyHigh(x, y);
+                final int k = product + i + j;
+                final long s = lo + scratch[k];
+                final long t = s + carry;
+                carry = hi + (Long.compareUnsigned(s, lo) < 0 ? 1 : 0) + (Long.compareUnsigned(t, s) < 0 ? 1 : 0);
+                scratch[k] = t;
+            }
+            scratch[product + i + length] = carry;
+        }
+        // double them
+        for (int k = product + 2 * length - 1; k > product; k--) {
+            scratch[k] = (scratch[k] << 1) | (scratch[k - 1] >>> 63);
+        }
+        scratch[product] <<= 1;
+        // and add the squares x_i * x_i
+        long carry = 0;
+        for (int i = Math.max(0, (n - 1) / 2); i < length; i++) {
+            final long x = scratch[i];
+            final long lo = x * x;
+            final long hi = Math.unsignedMultiplyHigh(x, x);
+            final int k = product + 2 * i;
+            long s = scratch[k] + lo;
+            long c = Long.compareUnsigned(s, lo) < 0 ? 1 : 0;
+            final long t = s + carry;
+            c += Long.compareUnsigned(t, s) < 0 ? 1 : 0;
+            scratch[k] = t;
+            s = scratch[k + 1] + hi;
+            long c2 = Long.compareUnsigned(s, hi) < 0 ? 1 : 0;
+            final long u = s + c;
+            c2 += Long.compareUnsigned(u, s) < 0 ? 1 : 0;
+            scratch[k + 1] = u;
+            carry = c2;
+        }
+        System.arraycopy(scratch, product + n, limbs, 0, length);
+        return this;
+    }
+
+    public boolean isNegative() {
+        return limbs[fractionLimbs] < 0;
+    }
+
+    /**
+     * @return true if this &gt; value
+     */
+    public boolean exceeds(long value) {
+        final long integer = limbs[fractionLimbs];
+        if (integer != value) return integer > value;
+        for (int i = 0; i < fractionLimbs; i++) {
+            if (limbs[i] != 0) return true;
+        }
+        return false;
+    }
+
+    private static void negate(long[] from, long[] to, int length) {
+        negate(from, to, 0, length);
+    }
+
+    private static void negate(long[] from, long[] to, int offset, int length) {
+        long carry = 1;
+        for (int i = 0; i < length; i++) {
+            final long x = ~from[i] + carry;
+            carry = carry == 1 && x == 0 ? 1 : 0;
+            to[offset + i] = x;
+        }
+    }
+
+    @Override
+    public int compareTo(FixedPoint b) {
+        if (limbs[fractionLimbs] != b.limbs[b.fractionLimbs]) {
+            return Long.compare(limbs[fractionLimbs], b.limbs[b.fractionLimbs]);
+        }
+        // align the fraction limbs from the most significant one
+        for (int i = 1; i <= Math.max(fractionLimbs, b.fractionLimbs); i++) {
+            final long x = i <= fractionLimbs ? limbs[fractionLimbs - i] : 0L;
+            final long y = i <= b.fractionLimbs ? b.limbs[b.fractionLimbs - i] : 0L;
+            if (x != y) return Long.compareUnsigned(x, y);
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FixedPoint other && compareTo(other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Double.hashCode(doubleValue());
+    }
+
+    @Override
+    public int intValue() {
+        return (int) doubleValue();
+    }
+
+    @Override
+    public long longValue() {
+        return (long) doubleValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) doubleValue();
+    }
+
+    /**
+     * @return the value rounded from its two most significant non zero limbs
+     */
+    @Override
+    public double doubleValue() {
+        final boolean negative = isNegative();
+        // the ones' complement is the magnitude minus one unit of the last limb, close enough for a double
+        for (int i = fractionLimbs; i >= 0; i--) {
+            final long x = negative ? ~limbs[i] : limbs[i];
+            if (x == 0) continue;
+            final long next = i > 0 ? (negative ? ~limbs[i - 1] : limbs[i - 1]) : 0L;
+            final double magnitude = Math.scalb(unsignedToDouble(x) + unsignedToDouble(next) / TWO_POW_64, 64 * (i - fractionLimbs));
+            return negative ? -magnitude : magnitude;
+        }
+        return negative ? -Math.scalb(1.0, -64 * fractionLimbs) : 0.0;
+    }
+
+    private static double unsignedToDouble(long x) {
+        return x >= 0 ? x : (double) (x >>> 1) * 2.0 + (x & 1);
+    }
+
+    /**
+     * @return exact value
+     */
+    public BigDecimal toBigDecimal() {
+        BigInteger value = BigInteger.valueOf(limbs[fractionLimbs]);
+        for (int i = fractionLimbs - 1; i >= 0; i--) {
+            value = value.shiftLeft(64).or(new BigInteger(Long.toUnsignedString(limbs[i])));
+        }
+        // 2^-k = 5^k / 10^k
+        final int bits = 64 * fractionLimbs;
+        return new BigDecimal(value.multiply(BigInteger.valueOf(5).pow(bits)), bits);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().round(new MathContext(34)).toString();
+    }
+}
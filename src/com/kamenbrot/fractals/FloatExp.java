@@ -0,0 +1,207 @@
+package com.kamenbrot.fractals;
+
+import java.io.Serial;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * A double mantissa with a separate long binary exponent. Keeps the 53 bits of a double but never underflows, so pixel
+ * spacings and perturbation deltas well below 1e-308 can still be represented. The value is
+ * {@code mantissa * 2^exponent} with the mantissa kept in [1, 2) or zero.
+ */
+public final class FloatExp extends Number implements Comparable<FloatExp> {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public static final FloatExp ZERO = new FloatExp(0.0, 0L);
+    public static final FloatExp ONE = FloatExp.valueOf(1.0);
+    public static final FloatExp TWO = FloatExp.valueOf(2.0);
+
+    /**
+     * Mantissas further apart than this many binary digits do not affect each other's sum
+     */
+    private static final int MAX_ALIGNMENT = 64;
+    private static final double LOG10_2 = Math.log10(2.0);
+
+    private final double mantissa;
+    private final long exponent;
+
+    private FloatExp(double mantissa, long exponent) {
+        // zero is kept as +0.0 with exponent 0 so that equal values have equal hash codes
+        this.mantissa = mantissa == 0.0 ? 0.0 : mantissa;
+        this.exponent = mantissa == 0.0 ? 0L : exponent;
+    }
+
+    /**
+     * @param mantissa any finite double
+     * @param exponent binary exponent
+     * @return mantissa * 2^exponent normalised
+     */
+    public static FloatExp of(double mantissa, long exponent) {
+        if (mantissa == 0.0) return ZERO;
+        final int shift = Math.getExponent(mantissa);
+        return new FloatExp(Math.scalb(mantissa, -shift), exponent + shift);
+    }
+
+    public static FloatExp valueOf(double value) {
+        return of(value, 0L);
+    }
+
+    public static FloatExp valueOf(BigDecimal value) {
+        if (value.signum() == 0) return ZERO;
+        // binary exponent estimated from the decimal one, the scaled value ends up close to one
+        final long decimalExponent = value.precision() - (long) value.scale() - 1;
+        final int binaryExponent = (int) Math.floor(decimalExponent / LOG10_2);
+        return of(scaleByPowerOfTwo(value, -binaryExponent, MathContext.DECIMAL64).doubleValue(), binaryExponent);
+    }
+
+    public double getMantissa() {
+        return mantissa;
+    }
+
+    public long getExponent() {
+        return exponent;
+    }
+
+    public FloatExp add(FloatExp b) {
+        if (this.mantissa == 0.0) return b;
+        if (b.mantissa == 0.0) return this;
+        final long diff = this.exponent - b.exponent;
+        if (diff > MAX_ALIGNMENT) return this;
+        if (diff < -MAX_ALIGNMENT) return b;
+        if (diff >= 0) {
+            return of(this.mantissa + Math.scalb(b.mantissa, (int) -diff), this.exponent);
+        }
+        return of(Math.scalb(this.mantissa, (int) diff) + b.mantissa, b.exponent);
+    }
+
+    public FloatExp sub(FloatExp b) {
+        return this.add(b.negate());
+    }
+
+    public FloatExp negate() {
+        return mantissa == 0.0 ? ZERO : new FloatExp(-mantissa, exponent);
+    }
+
+    public FloatExp abs() {
+        return mantissa < 0 ? negate() : this;
+    }
+
+    public FloatExp mul(FloatExp b) {
+        if (this.mantissa == 0.0 || b.mantissa == 0.0) return ZERO;
+        return of(this.mantissa * b.mantissa, this.exponent + b.exponent);
+    }
+
+    public FloatExp mul(double b) {
+        return of(this.mantissa * b, this.exponent);
+    }
+
+    public FloatExp div(FloatExp b) {
+        if (b.mantissa == 0.0) throw new ArithmeticException("Division by zero");
+        if (this.mantissa == 0.0) return ZERO;
+        return of(this.mantissa / b.mantissa, this.exponent - b.exponent);
+    }
+
+    /**
+     * @return this * 2^n, exact
+     */
+    public FloatExp scalb(long n) {
+        return mantissa == 0.0 ? ZERO : new FloatExp(mantissa, exponent + n);
+    }
+
+    /**
+     * Same mapping as {@link ComplexMapping#mapComplex(DoubleDouble, DoubleDouble, DoubleDouble, DoubleDouble)}
+     *
+     * @param limit param
+     * @param min   param
+     * @param max   param
+     * @return mapped complex
+     */
+    public FloatExp mapComplex(FloatExp limit, FloatExp min, FloatExp max) {
+        return min.add(this.div(limit).mul(max.sub(min)));
+    }
+
+    /**
+     * @return floor of the decimal exponent, the power of ten of the most significant digit
+     */
+    public long decimalExponent() {
+        if (mantissa == 0.0) return 0L;
+        return (long) Math.floor((exponent + Math.log(Math.abs(mantissa)) / Math.log(2.0)) * LOG10_2);
+    }
+
+    @Override
+    public int compareTo(FloatExp b) {
+        final int signA = (int) Math.signum(this.mantissa);
+        final int signB = (int) Math.signum(b.mantissa);
+        if (signA != signB) return Integer.compare(signA, signB);
+        if (signA == 0) return 0;
+        if (this.exponent != b.exponent) {
+            // same sign, the bigger exponent has the bigger magnitude
+            return this.exponent > b.exponent ? signA : -signA;
+        }
+        return Double.compare(this.mantissa, b.mantissa);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FloatExp other && compareTo(other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Double.hashCode(mantissa) * 31 + Long.hashCode(exponent);
+    }
+
+    @Override
+    public int intValue() {
+        return (int) doubleValue();
+    }
+
+    @Override
+    public long longValue() {
+        return (long) doubleValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) doubleValue();
+    }
+
+    /**
+     * @return the value as a double, zero or infinity when it is out of range
+     */
+    @Override
+    public double doubleValue() {
+        if (exponent > Double.MAX_EXPONENT) return mantissa * Double.POSITIVE_INFINITY;
+        if (exponent < Double.MIN_EXPONENT - 53) return 0.0 * mantissa;
+        return Math.scalb(mantissa, (int) exponent);
+    }
+
+    /**
+     * @return exact value
+     */
+    public BigDecimal toBigDecimal() {
+        return scaleByPowerOfTwo(new BigDecimal(mantissa), exponent, null);
+    }
+
+    /**
+     * @param mc rounding of the product, null for exact
+     * @return value * 2^n
+     */
+    private static BigDecimal scaleByPowerOfTwo(BigDecimal value, long n, MathContext mc) {
+        if (n >= 0) {
+            final BigDecimal factor = new BigDecimal(BigInteger.ONE.shiftLeft((int) n));
+            return mc == null ? value.multiply(factor) : value.multiply(factor, mc);
+        }
+        // 2^-n = 5^n / 10^n
+        final BigDecimal factor = new BigDecimal(BigInteger.valueOf(5).pow((int) -n));
+        return (mc == null ? value.multiply(factor) : value.multiply(factor, mc)).scaleByPowerOfTen((int) n);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().round(new MathContext(17)).toString();
+    }
+}
@@ -0,0 +1,92 @@
+package com.kamenbrot.fractals;
+
+import com.kamenbrot.fractals.mandelbrot.BurningShipFormula;
+import com.kamenbrot.fractals.mandelbrot.MandelbrotFormula;
+import com.kamenbrot.fractals.mandelbrot.MultibrotFormula;
+import com.kamenbrot.fractals.mandelbrot.TricornFormula;
+import com.kamenbrot.state.MandelState;
+
+import java.util.List;
+
+/**
+ * An escape time formula. Implementations provide one {@link FractalKernel} per precision tier they support and pick
+ * the one fitting the state every frame.
+ */
+public interface FractalFormula {
+
+    /**
+     * A method rather than a constant, the formulas are initialised with this interface while it is still initialising.
+     *
+     * @return formulas that can be cycled through
+     */
+    static List<FractalFormula> builtIn() {
+        return List.of(
+                MandelbrotFormula.INSTANCE,
+                new MultibrotFormula(3),
+                new MultibrotFormula(4),
+                BurningShipFormula.INSTANCE,
+                TricornFormula.INSTANCE);
+    }
+
+    String getName();
+
+    /**
+     * @return symmetry of the images of the formula, lets generators iterate only half of a view straddling its axis
+     */
+    default Symmetry getSymmetry() {
+        return Symmetry.NONE;
+    }
+
+    /**
+     * A full set has no holes, every region enclosed by points of the set belongs to it. Holds for the sets of
+     * holomorphic polynomials, their complement is the connected basin of infinity. Interior prediction relies on it.
+     *
+     * @return whether the set of the formula is known to be full
+     */
+    default boolean isFull() {
+        return false;
+    }
+
+    /**
+     * A connected set is one piece, so a region of the complement cannot hide inside a rectangle whose border is all
+     * of the set or all of one escape time. Rectangle subdivision relies on it.
+     *
+     * @return whether the set of the formula is known to be connected
+     */
+    default boolean isConnected() {
+        return false;
+    }
+
+    /**
+     * @param mandelState view of the frame about to be generated, must not change until the frame is done
+     * @return kernel iterating the pixels of the view
+     */
+    FractalKernel kernel(MandelState mandelState);
+
+    /**
+     * @param mandelState view of the frame about to be generated, must not change until the frame is done
+     * @return distance estimation kernel of the view or null if the formula has none at the precision of the state
+     */
+    default DistanceKernel distanceKernel(MandelState mandelState) {
+        return null;
+    }
+
+    /**
+     * @return whether {@link #distanceKernel(MandelState)} has a kernel for the state
+     */
+    default boolean hasDistanceKernel(MandelState mandelState) {
+        return false;
+    }
+
+    enum Symmetry {
+        NONE,
+        /**
+         * Conjugate c gives the conjugate orbit, the image mirrors across the real axis
+         */
+        CONJUGATE,
+        /**
+         * -z gives the same orbit, the image is symmetric through the origin
+         */
+        POINT
+    }
+}
@@ -0,0 +1,44 @@
+package com.kamenbrot.fractals;
+
+import com.kamenbrot.state.MandelState;
+
+/**
+ * Escape time iteration of one formula at one precision tier. A kernel is resolved once per frame by
+ * {@link FractalFormula#kernel(MandelState)} with everything that does not change between pixels already looked up,
+ * so a pixel costs one interface call into a kernel that goes straight to its iteration loop.
+ * <p>
+ * The generators call every kind of kernel from the same call sites, which the JIT sees as megamorphic once a few
+ * formulas or tiers were rendered. The call is not inlined then, the escape time loop behind it is what has to be fast.
+ */
+public interface FractalKernel {
+
+    /**
+     * @return iterations of the pixel before escape or max iterations
+     */
+    int iterate(int x, int y);
+
+    /**
+     * Iterates a row segment at once.
+     *
+     * @param x          first pixel x
+     * @param y          pixel y
+     * @param length     number of pixels in the row segment
+     * @param iterations output iterations per pixel
+     * @return false if the kernel has no row version and the pixels should be iterated one by one
+     */
+    default boolean iterateRow(int x, int y, int length, int[] iterations) {
+        return false;
+    }
+
+    /**
+     * Leaves the pixels on every {@code step}-th row and column out as if they were inside.
+     *
+     * @param kernel        kernel of the other pixels
+     * @param step          spacing of the pixels left out
+     * @param maxIterations max iterations
+     * @return kernel skipping the pixels, without a row version
+     */
+    static FractalKernel skipping(FractalKernel kernel, int step, int maxIterations) {
+        return (x, y) -> x % step == 0 && y % step == 0 ? maxIterations : kernel.iterate(x, y);
+    }
+}
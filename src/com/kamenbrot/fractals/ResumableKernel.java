@@ -0,0 +1,32 @@
+package com.kamenbrot.fractals;
+
+/**
+ * Kernel whose pixels can stop at max iterations and later continue where they stopped once the limit is raised. The
+ * z of every pixel is kept in one primitive array, the real part of pixel {@code index} at {@code 2 * index} and the
+ * imaginary part right after it.
+ */
+public interface ResumableKernel extends FractalKernel {
+
+    /**
+     * Real part stored for a pixel proven not to escape, it is never resumed
+     */
+    double INSIDE = Double.POSITIVE_INFINITY;
+
+    /**
+     * @param iterations iterations the stored z of the pixel is at, 0 to start the pixel over
+     * @param orbits     z per pixel, the z reached is stored back if the pixel does not escape
+     * @param index      index of the pixel in orbits
+     * @return iterations before escape or max iterations
+     */
+    int iterate(int x, int y, int iterations, double[] orbits, int index);
+
+    /**
+     * Row version of {@link #iterate(int, int, int, double[], int)} for pixels starting over.
+     *
+     * @param orbits output z per pixel of the row segment, interleaved the same way from index 0
+     * @return false if the kernel has no row version and the pixels should be iterated one by one
+     */
+    default boolean iterateRow(int x, int y, int length, int[] iterations, double[] orbits) {
+        return false;
+    }
+}
@@ -0,0 +1,252 @@
+package com.kamenbrot.fractals.expression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of the class file format for {@link FormulaCompiler}. Classes are written as version 49 so the verifier
+ * infers the types at branch targets itself and no stack map frames are needed.
+ */
+final class ClassFileWriter {
+
+    private static final int VERSION = 49;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream constantPool = new ByteArrayOutputStream();
+    private final DataOutputStream constants = new DataOutputStream(constantPool);
+    private final Map<String, Integer> constantIndices = new HashMap<>();
+    private final List<Code> methods = new ArrayList<>();
+    private int constantCount = 1;
+
+    int utf8(String value) {
+        return constant("U" + value, out -> {
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(value);
+        }, 1);
+    }
+
+    int classRef(String internalName) {
+        final int name = utf8(internalName);
+        return constant("C" + internalName, out -> {
+            out.writeByte(CONSTANT_CLASS);
+            out.writeShort(name);
+        }, 1);
+    }
+
+    int string(String value) {
+        final int utf8 = utf8(value);
+        return constant("S" + value, out -> {
+            out.writeByte(CONSTANT_STRING);
+            out.writeShort(utf8);
+        }, 1);
+    }
+
+    int doubleConstant(double value) {
+        return constant("D" + Double.doubleToRawLongBits(value), out -> {
+            out.writeByte(CONSTANT_DOUBLE);
+            out.writeDouble(value);
+        }, 2);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        final int ownerIndex = classRef(owner);
+        final int nameIndex = utf8(name);
+        final int descriptorIndex = utf8(descriptor);
+        final int nameAndType = constant("N" + name + ":" + descriptor, out -> {
+            out.writeByte(CONSTANT_NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        }, 1);
+        return constant(tag + owner + "." + name + ":" + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        }, 1);
+    }
+
+    private int constant(String key, ConstantWriter writer, int slots) {
+        final Integer existing = constantIndices.get(key);
+        if (existing != null) return existing;
+        try {
+            writer.write(constants);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final int index = constantCount;
+        constantCount += slots;
+        constantIndices.put(key, index);
+        return index;
+    }
+
+    /**
+     * @return new public method, written to the class in the order of creation
+     */
+    Code method(String name, String descriptor, int maxStack, int maxLocals) {
+        final Code code = new Code(utf8(name), utf8(descriptor), maxStack, maxLocals);
+        methods.add(code);
+        return code;
+    }
+
+    byte[] toByteArray(String thisClass, String superClass, String... interfaces) {
+        final int thisIndex = classRef(thisClass);
+        final int superIndex = classRef(superClass);
+        final int[] interfaceIndices = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) interfaceIndices[i] = classRef(interfaces[i]);
+        final int codeAttribute = utf8("Code");
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(constantCount);
+            constants.flush();
+            constantPool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(interfaceIndices.length);
+            for (int index : interfaceIndices) out.writeShort(index);
+            // fields
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (Code method : methods) {
+                final byte[] code = method.toByteArray();
+                out.writeShort(ACC_PUBLIC);
+                out.writeShort(method.name);
+                out.writeShort(method.descriptor);
+                out.writeShort(1);
+                out.writeShort(codeAttribute);
+                out.writeInt(12 + code.length);
+                out.writeShort(method.maxStack);
+                out.writeShort(method.maxLocals);
+                out.writeInt(code.length);
+                out.write(code);
+                // exception table and attributes
+                out.writeShort(0);
+                out.writeShort(0);
+            }
+            // class attributes
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConstantWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Bytecode of one method. Branches are written against {@link Label}s and patched once the label is placed.
+     */
+    static final class Code {
+
+        private final int name;
+        private final int descriptor;
+        private final int maxStack;
+        private final int maxLocals;
+        private byte[] code = new byte[256];
+        private int length;
+
+        private Code(int name, int descriptor, int maxStack, int maxLocals) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        Code op(int opcode) {
+            return u1(opcode);
+        }
+
+        Code op(int opcode, int operand) {
+            return u1(opcode).u1(operand);
+        }
+
+        /**
+         * Instruction with a constant pool index operand
+         */
+        Code ref(int opcode, int index) {
+            return u1(opcode).u2(index);
+        }
+
+        /**
+         * Local variable instruction, widened for slots above 255
+         */
+        Code local(int opcode, int slot) {
+            if (slot > 255) return u1(Opcodes.WIDE).u1(opcode).u2(slot);
+            return u1(opcode).u1(slot);
+        }
+
+        Code iinc(int slot, int increment) {
+            if (slot > 255) return u1(Opcodes.WIDE).u1(Opcodes.IINC).u2(slot).u2(increment);
+            return u1(Opcodes.IINC).u1(slot).u1(increment);
+        }
+
+        Code jump(int opcode, Label target) {
+            final int at = length;
+            u1(opcode).u2(0);
+            if (target.offset >= 0) patch(at, target.offset);
+            else target.references.add(at);
+            return this;
+        }
+
+        Code mark(Label label) {
+            label.offset = length;
+            for (int at : label.references) patch(at, length);
+            return this;
+        }
+
+        private void patch(int at, int target) {
+            final int offset = target - at;
+            code[at + 1] = (byte) (offset >> 8);
+            code[at + 2] = (byte) offset;
+        }
+
+        private Code u1(int value) {
+            if (length == code.length) code = Arrays.copyOf(code, length * 2);
+            code[length++] = (byte) value;
+            return this;
+        }
+
+        private Code u2(int value) {
+            return u1(value >> 8).u1(value);
+        }
+
+        private byte[] toByteArray() {
+            if (length > Short.MAX_VALUE) throw new IllegalArgumentException("Formula too long, branch offsets overflow");
+            return Arrays.copyOf(code, length);
+        }
+    }
+
+    /**
+     * Branch target, branches placed before the label is marked are patched when it is.
+     */
+    static final class Label {
+        private int offset = -1;
+        private final List<Integer> references = new ArrayList<>();
+    }
+}
@@ -0,0 +1,93 @@
+package com.kamenbrot.fractals.expression;
+
+import com.kamenbrot.fractals.DoubleDouble;
+import com.kamenbrot.fractals.FractalFormula;
+import com.kamenbrot.fractals.FractalKernel;
+import com.kamenbrot.fractals.mandelbrot.CpuMandelbrot;
+import com.kamenbrot.fractals.mandelbrot.DoubleDoubleViewport;
+import com.kamenbrot.fractals.mandelbrot.DoubleViewport;
+import com.kamenbrot.state.GenericMandelState;
+import com.kamenbrot.state.MandelDoubleDoubleState;
+import com.kamenbrot.state.MandelState;
+
+/**
+ * User defined formula compiled at runtime by {@link FormulaCompiler}. The pixel is c and z starts at zero. Iterated
+ * natively in double and double-double, deeper views are iterated on their double mapping.
+ */
+public final class CompiledFormula implements FractalFormula {
+
+    private final String source;
+    private final Symmetry symmetry;
+    private final DoubleIteration doubleIteration;
+    private final DoubleDoubleIteration doubleDoubleIteration;
+
+    CompiledFormula(String source, Symmetry symmetry, DoubleIteration doubleIteration, DoubleDoubleIteration doubleDoubleIteration) {
+        this.source = source;
+        this.symmetry = symmetry;
+        this.doubleIteration = doubleIteration;
+        this.doubleDoubleIteration = doubleDoubleIteration;
+    }
+
+    /**
+     * @param source formula in z and c, see {@link FormulaParser}
+     * @return the compiled formula
+     * @throws IllegalArgumentException if the formula is not valid
+     */
+    public static CompiledFormula compile(String source) {
+        return FormulaCompiler.compile(source);
+    }
+
+    @Override
+    public String getName() {
+        return source;
+    }
+
+    @Override
+    public Symmetry getSymmetry() {
+        return symmetry;
+    }
+
+    @Override
+    public FractalKernel kernel(MandelState mandelState) {
+        final int maxIterations = mandelState.getMaxIterations();
+        final double epsilon = CpuMandelbrot.periodicityTolerance(mandelState);
+        return switch (mandelState) {
+            case MandelDoubleDoubleState s -> {
+                final DoubleDoubleViewport viewport = DoubleDoubleViewport.of(s);
+                final DoubleDoubleIteration iteration = doubleDoubleIteration;
+                yield (x, y) -> iteration.iterate(DoubleDouble.ZERO, DoubleDouble.ZERO, viewport.re(x), viewport.im(y), maxIterations, epsilon);
+            }
+            case GenericMandelState<?> s -> {
+                final DoubleViewport viewport = DoubleViewport.of(s);
+                final DoubleIteration iteration = doubleIteration;
+                yield (x, y) -> iteration.iterate(0.0, 0.0, viewport.re(x), viewport.im(y), maxIterations, epsilon);
+            }
+            default -> throw new UnsupportedOperationException("State Not Implemented");
+        };
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    /**
+     * Implemented by the hidden class of the double tier
+     */
+    interface DoubleIteration {
+        /**
+         * @return iterations before escape or max iterations
+         */
+        int iterate(double zRe, double zIm, double cRe, double cIm, int maxIterations, double epsilon);
+    }
+
+    /**
+     * Implemented by the hidden class of the double-double tier
+     */
+    interface DoubleDoubleIteration {
+        /**
+         * @return iterations before escape or max iterations
+         */
+        int iterate(DoubleDouble zRe, DoubleDouble zIm, DoubleDouble cRe, DoubleDouble cIm, int maxIterations, double epsilon);
+    }
+}
@@ -0,0 +1,52 @@
+package com.kamenbrot.fractals.expression;
+
+import java.math.BigDecimal;
+
+/**
+ * Complex valued expression of an iteration formula, see {@link FormulaParser} for the syntax.
+ */
+public sealed interface Expression {
+
+    /**
+     * @param re real part, kept exact so the double-double tier gets every digit of the literal
+     * @param im imaginary part
+     */
+    record Constant(BigDecimal re, BigDecimal im) implements Expression {
+    }
+
+    /**
+     * @param name {@code z} or {@code c}
+     */
+    record Variable(String name) implements Expression {
+    }
+
+    record Unary(UnaryOperator operator, Expression operand) implements Expression {
+    }
+
+    record Binary(BinaryOperator operator, Expression left, Expression right) implements Expression {
+    }
+
+    /**
+     * @param exponent positive integer exponent, multiplied out by squaring
+     */
+    record Power(Expression base, int exponent) implements Expression {
+    }
+
+    enum UnaryOperator {
+        NEGATE,
+        CONJUGATE,
+        /**
+         * Absolute value of the real and the imaginary part each, the fold of the burning ship
+         */
+        ABS,
+        REAL,
+        IMAGINARY
+    }
+
+    enum BinaryOperator {
+        ADD,
+        SUBTRACT,
+        MULTIPLY,
+        DIVIDE
+    }
+}
@@ -0,0 +1,425 @@
+package com.kamenbrot.fractals.expression;
+
+import com.kamenbrot.fractals.FractalFormula;
+
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.kamenbrot.fractals.expression.Opcodes.*;
+
+/**
+ * Compiles a formula to one hidden class per precision tier holding the whole escape time loop, the same loop as
+ * {@link com.kamenbrot.fractals.mandelbrot.CpuMandelbrot#fractalIteration(double, double, int, double, double, double)}
+ * with the formula in place of z^2 + c. Nothing is interpreted per iteration so the JIT sees a plain loop over locals.
+ * <p>
+ * The expression is first lowered to real valued three address code, folding literals and zero parts on the way so
+ * for example {@code z^2 + c} lowers to exactly the operations of the hand written loop. Each tier then emits the code
+ * on doubles or on {@link com.kamenbrot.fractals.DoubleDouble} values.
+ */
+final class FormulaCompiler {
+
+    private static final String CLASS_NAME = "com/kamenbrot/fractals/expression/CompiledIteration";
+    private static final String DOUBLE_DOUBLE = "com/kamenbrot/fractals/DoubleDouble";
+    private static final String DOUBLE_DOUBLE_DESCRIPTOR = "L" + DOUBLE_DOUBLE + ";";
+    private static final String BINARY_DESCRIPTOR = "(" + DOUBLE_DOUBLE_DESCRIPTOR + ")" + DOUBLE_DOUBLE_DESCRIPTOR;
+    private static final String UNARY_DESCRIPTOR = "()" + DOUBLE_DOUBLE_DESCRIPTOR;
+    private static final Literal ZERO = new Literal(BigDecimal.ZERO);
+
+    /**
+     * Values 0 to 3 are z and c, the instructions assign the temporaries after them
+     */
+    private static final int Z_RE = 0;
+    private static final int Z_IM = 1;
+    private static final int C_RE = 2;
+    private static final int C_IM = 3;
+
+    private final List<Instruction> instructions = new ArrayList<>();
+    private int values = 4;
+    private Complex result;
+
+    private FormulaCompiler() {
+    }
+
+    /**
+     * @param source formula, see {@link FormulaParser}
+     * @return the compiled formula
+     * @throws IllegalArgumentException if the formula is not valid
+     */
+    static CompiledFormula compile(String source) {
+        final Expression expression = FormulaParser.parse(source);
+        final FormulaCompiler compiler = new FormulaCompiler();
+        compiler.result = compiler.lower(expression);
+        return new CompiledFormula(source,
+                isConjugateSymmetric(expression) ? FractalFormula.Symmetry.CONJUGATE : FractalFormula.Symmetry.NONE,
+                (CompiledFormula.DoubleIteration) define(compiler.doubleClass()),
+                (CompiledFormula.DoubleDoubleIteration) define(compiler.doubleDoubleClass()));
+    }
+
+    /**
+     * @return whether conjugating z and c conjugates the result. Holds for arithmetic on real literals, the parts of
+     * {@code abs} and {@code im} do not follow the sign of the imaginary part.
+     */
+    private static boolean isConjugateSymmetric(Expression expression) {
+        return switch (expression) {
+            case Expression.Constant constant -> constant.im().signum() == 0;
+            case Expression.Variable variable -> true;
+            case Expression.Unary unary -> unary.operator() != Expression.UnaryOperator.ABS
+                    && unary.operator() != Expression.UnaryOperator.IMAGINARY
+                    && isConjugateSymmetric(unary.operand());
+            case Expression.Binary binary -> isConjugateSymmetric(binary.left()) && isConjugateSymmetric(binary.right());
+            case Expression.Power power -> isConjugateSymmetric(power.base());
+        };
+    }
+
+    private static Object define(byte[] classFile) {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            return lookup.lookupClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not define the compiled formula", e);
+        }
+    }
+
+    // lowering
+
+    private sealed interface Operand permits Literal, Value {
+    }
+
+    private record Literal(BigDecimal value) implements Operand {
+        boolean is(int value) {
+            return this.value.compareTo(BigDecimal.valueOf(value)) == 0;
+        }
+    }
+
+    private record Value(int index) implements Operand {
+    }
+
+    private record Complex(Operand re, Operand im) {
+    }
+
+    private enum Operation {
+        ADD, SUBTRACT, MULTIPLY, DIVIDE, SQUARE, NEGATE, ABS
+    }
+
+    /**
+     * target = left operation right, right is null for the unary operations
+     */
+    private record Instruction(Operation operation, Operand left, Operand right, int target) {
+    }
+
+    private Complex lower(Expression expression) {
+        return switch (expression) {
+            case Expression.Constant constant -> new Complex(new Literal(constant.re()), new Literal(constant.im()));
+            case Expression.Variable variable -> variable.name().equals("z")
+                    ? new Complex(new Value(Z_RE), new Value(Z_IM))
+                    : new Complex(new Value(C_RE), new Value(C_IM));
+            case Expression.Unary unary -> {
+                final Complex operand = lower(unary.operand());
+                yield switch (unary.operator()) {
+                    case NEGATE -> new Complex(negate(operand.re()), negate(operand.im()));
+                    case CONJUGATE -> new Complex(operand.re(), negate(operand.im()));
+                    case ABS -> new Complex(abs(operand.re()), abs(operand.im()));
+                    case REAL -> new Complex(operand.re(), ZERO);
+                    case IMAGINARY -> new Complex(operand.im(), ZERO);
+                };
+            }
+            case Expression.Binary binary -> {
+                final Complex left = lower(binary.left());
+                final Complex right = lower(binary.right());
+                yield switch (binary.operator()) {
+                    case ADD -> new Complex(add(left.re(), right.re()), add(left.im(), right.im()));
+                    case SUBTRACT -> new Complex(subtract(left.re(), right.re()), subtract(left.im(), right.im()));
+                    case MULTIPLY -> multiply(left, right);
+                    case DIVIDE -> divide(left, right);
+                };
+            }
+            case Expression.Power power -> {
+                // square and multiply
+                Complex square = lower(power.base());
+                Complex product = null;
+                for (int exponent = power.exponent(); exponent > 0; exponent >>= 1) {
+                    if ((exponent & 1) != 0) product = product == null ? square : multiply(product, square);
+                    if (exponent > 1) square = multiply(square, square);
+                }
+                yield product;
+            }
+        };
+    }
+
+    private Complex multiply(Complex a, Complex b) {
+        if (a.equals(b)) {
+            final Operand t = multiply(a.re(), a.im());
+            return new Complex(subtract(multiply(a.re(), a.re()), multiply(a.im(), a.im())), add(t, t));
+        }
+        return new Complex(
+                subtract(multiply(a.re(), b.re()), multiply(a.im(), b.im())),
+                add(multiply(a.re(), b.im()), multiply(a.im(), b.re())));
+    }
+
+    private Complex divide(Complex a, Complex b) {
+        if (isZero(b.im())) return new Complex(divide(a.re(), b.re()), divide(a.im(), b.re()));
+        final Operand denominator = add(multiply(b.re(), b.re()), multiply(b.im(), b.im()));
+        return new Complex(
+                divide(add(multiply(a.re(), b.re()), multiply(a.im(), b.im())), denominator),
+                divide(subtract(multiply(a.im(), b.re()), multiply(a.re(), b.im())), denominator));
+    }
+
+    private Operand add(Operand a, Operand b) {
+        if (isZero(a)) return b;
+        if (isZero(b)) return a;
+        if (a instanceof Literal x && b instanceof Literal y) return new Literal(x.value().add(y.value()));
+        return emit(Operation.ADD, a, b);
+    }
+
+    private Operand subtract(Operand a, Operand b) {
+        if (isZero(b)) return a;
+        if (isZero(a)) return negate(b);
+        if (a instanceof Literal x && b instanceof Literal y) return new Literal(x.value().subtract(y.value()));
+        return emit(Operation.SUBTRACT, a, b);
+    }
+
+    private Operand multiply(Operand a, Operand b) {
+        if (isZero(a) || isZero(b)) return ZERO;
+        if (a instanceof Literal x && b instanceof Literal y) return new Literal(x.value().multiply(y.value()));
+        if (a instanceof Literal x && x.is(1)) return b;
+        if (b instanceof Literal y && y.is(1)) return a;
+        if (a instanceof Literal x && x.is(-1)) return negate(b);
+        if (b instanceof Literal y && y.is(-1)) return negate(a);
+        if (a.equals(b)) return emit(Operation.SQUARE, unsigned(a), null);
+        return emit(Operation.MULTIPLY, a, b);
+    }
+
+    /**
+     * @return operand the value is the absolute value or the negation of, for squaring without the sign change
+     */
+    private Operand unsigned(Operand a) {
+        if (a instanceof Value value && value.index() >= 4) {
+            final Instruction instruction = instructions.get(value.index() - 4);
+            if (instruction.operation() == Operation.ABS || instruction.operation() == Operation.NEGATE) {
+                return unsigned(instruction.left());
+            }
+        }
+        return a;
+    }
+
+    private Operand divide(Operand a, Operand b) {
+        if (b instanceof Literal y && y.is(1)) return a;
+        if (isZero(a) && !isZero(b)) return ZERO;
+        if (a instanceof Literal x && b instanceof Literal y && !isZero(y)) {
+            return new Literal(x.value().divide(y.value(), MathContext.DECIMAL128));
+        }
+        return emit(Operation.DIVIDE, a, b);
+    }
+
+    private Operand negate(Operand a) {
+        if (a instanceof Literal x) return new Literal(x.value().negate());
+        return emit(Operation.NEGATE, a, null);
+    }
+
+    private Operand abs(Operand a) {
+        if (a instanceof Literal x) return new Literal(x.value().abs());
+        return emit(Operation.ABS, a, null);
+    }
+
+    private static boolean isZero(Operand operand) {
+        return operand instanceof Literal literal && literal.value().signum() == 0;
+    }
+
+    private Value emit(Operation operation, Operand left, Operand right) {
+        final Value target = new Value(values++);
+        instructions.add(new Instruction(operation, left, right, target.index()));
+        return target;
+    }
+
+    // double tier, locals: this, zRe, zIm, cRe, cIm, maxIterations, epsilon, savedRe, savedIm, saveAt, i, temporaries
+
+    private static final int D_MAX = 9;
+    private static final int D_EPSILON = 10;
+    private static final int D_SAVED_RE = 12;
+    private static final int D_SAVED_IM = 14;
+    private static final int D_SAVE_AT = 16;
+    private static final int D_I = 17;
+    private static final int D_TEMPORARIES = 18;
+
+    private static int doubleSlot(int value) {
+        return value < 4 ? 1 + 2 * value : D_TEMPORARIES + 2 * (value - 4);
+    }
+
+    private byte[] doubleClass() {
+        final ClassFileWriter writer = new ClassFileWriter();
+        constructor(writer);
+        final ClassFileWriter.Code code = writer.method("iterate", "(DDDDID)I", 8, D_TEMPORARIES + 2 * (values - 4));
+        final int abs = writer.methodRef("java/lang/Math", "abs", "(D)D");
+        final ClassFileWriter.Label loop = new ClassFileWriter.Label();
+        final ClassFileWriter.Label inside = new ClassFileWriter.Label();
+        final ClassFileWriter.Label bounded = new ClassFileWriter.Label();
+        final ClassFileWriter.Label aperiodic = new ClassFileWriter.Label();
+
+        code.local(DLOAD, doubleSlot(Z_RE)).local(DSTORE, D_SAVED_RE)
+                .local(DLOAD, doubleSlot(Z_IM)).local(DSTORE, D_SAVED_IM)
+                .op(ICONST_1).local(ISTORE, D_SAVE_AT)
+                .op(ICONST_0).local(ISTORE, D_I);
+        code.mark(loop).local(ILOAD, D_I).local(ILOAD, D_MAX).jump(IF_ICMPGE, inside);
+        // zRe * zRe + zIm * zIm > 4
+        code.local(DLOAD, doubleSlot(Z_RE)).op(DUP2).op(DMUL)
+                .local(DLOAD, doubleSlot(Z_IM)).op(DUP2).op(DMUL).op(DADD)
+                .ref(LDC2_W, writer.doubleConstant(4.0)).op(DCMPL).jump(IFLE, bounded)
+                .local(ILOAD, D_I).op(IRETURN);
+        code.mark(bounded);
+        for (Instruction instruction : instructions) {
+            pushDouble(writer, code, instruction.left());
+            switch (instruction.operation()) {
+                case ADD -> pushDouble(writer, code, instruction.right()).op(DADD);
+                case SUBTRACT -> pushDouble(writer, code, instruction.right()).op(DSUB);
+                case MULTIPLY -> pushDouble(writer, code, instruction.right()).op(DMUL);
+                case DIVIDE -> pushDouble(writer, code, instruction.right()).op(DDIV);
+                case SQUARE -> code.op(DUP2).op(DMUL);
+                case NEGATE -> code.op(DNEG);
+                case ABS -> code.ref(INVOKESTATIC, abs);
+            }
+            code.local(DSTORE, doubleSlot(instruction.target()));
+        }
+        pushDouble(writer, code, result.re());
+        pushDouble(writer, code, result.im());
+        code.local(DSTORE, doubleSlot(Z_IM)).local(DSTORE, doubleSlot(Z_RE));
+        // |zRe - savedRe| + |zIm - savedIm| < epsilon
+        code.local(DLOAD, doubleSlot(Z_RE)).local(DLOAD, D_SAVED_RE).op(DSUB).ref(INVOKESTATIC, abs)
+                .local(DLOAD, doubleSlot(Z_IM)).local(DLOAD, D_SAVED_IM).op(DSUB).ref(INVOKESTATIC, abs).op(DADD)
+                .local(DLOAD, D_EPSILON).op(DCMPG).jump(IFGE, aperiodic)
+                .local(ILOAD, D_MAX).op(IRETURN);
+        code.mark(aperiodic).iinc(D_I, 1).local(ILOAD, D_I).local(ILOAD, D_SAVE_AT).jump(IF_ICMPNE, loop)
+                .local(DLOAD, doubleSlot(Z_RE)).local(DSTORE, D_SAVED_RE)
+                .local(DLOAD, doubleSlot(Z_IM)).local(DSTORE, D_SAVED_IM)
+                .local(ILOAD, D_SAVE_AT).op(ICONST_1).op(ISHL).local(ISTORE, D_SAVE_AT)
+                .jump(GOTO, loop);
+        code.mark(inside).local(ILOAD, D_MAX).op(IRETURN);
+        return writer.toByteArray(CLASS_NAME, "java/lang/Object", CompiledFormula.DoubleIteration.class.getName().replace('.', '/'));
+    }
+
+    private static ClassFileWriter.Code pushDouble(ClassFileWriter writer, ClassFileWriter.Code code, Operand operand) {
+        return switch (operand) {
+            case Literal literal -> code.ref(LDC2_W, writer.doubleConstant(literal.value().doubleValue()));
+            case Value value -> code.local(DLOAD, doubleSlot(value.index()));
+        };
+    }
+
+    // double-double tier, locals: this, zRe, zIm, cRe, cIm, maxIterations, epsilon, savedRe, savedIm, saveAt, i,
+    // literals, temporaries
+
+    private static final int DD_MAX = 5;
+    private static final int DD_EPSILON = 6;
+    private static final int DD_SAVED_RE = 8;
+    private static final int DD_SAVED_IM = 9;
+    private static final int DD_SAVE_AT = 10;
+    private static final int DD_I = 11;
+    private static final int DD_LITERALS = 12;
+
+    private byte[] doubleDoubleClass() {
+        // literals are made into DoubleDouble once per call, in front of the loop
+        final Map<String, Integer> literals = new LinkedHashMap<>();
+        for (Instruction instruction : instructions) {
+            collectLiteral(literals, instruction.left());
+            collectLiteral(literals, instruction.right());
+        }
+        collectLiteral(literals, result.re());
+        collectLiteral(literals, result.im());
+        final int temporaries = DD_LITERALS + literals.size();
+
+        final ClassFileWriter writer = new ClassFileWriter();
+        constructor(writer);
+        final String descriptor = "(" + DOUBLE_DOUBLE_DESCRIPTOR.repeat(4) + "ID)I";
+        final ClassFileWriter.Code code = writer.method("iterate", descriptor, 12, temporaries + values - 4);
+        final int getHi = writer.methodRef(DOUBLE_DOUBLE, "getHi", "()D");
+        final int getLo = writer.methodRef(DOUBLE_DOUBLE, "getLo", "()D");
+        final int sqr = writer.methodRef(DOUBLE_DOUBLE, "sqr", UNARY_DESCRIPTOR);
+        final int epsilonGreaterThanDifference = writer.methodRef(DOUBLE_DOUBLE, "epsilonGreaterThanDifference", "(DDDDD)Z");
+        final ClassFileWriter.Label loop = new ClassFileWriter.Label();
+        final ClassFileWriter.Label inside = new ClassFileWriter.Label();
+        final ClassFileWriter.Label bounded = new ClassFileWriter.Label();
+        final ClassFileWriter.Label aperiodic = new ClassFileWriter.Label();
+
+        for (Map.Entry<String, Integer> literal : literals.entrySet()) {
+            code.ref(NEW, writer.classRef("java/math/BigDecimal")).op(DUP)
+                    .ref(LDC_W, writer.string(literal.getKey()))
+                    .ref(INVOKESPECIAL, writer.methodRef("java/math/BigDecimal", "<init>", "(Ljava/lang/String;)V"))
+                    .ref(INVOKESTATIC, writer.methodRef(DOUBLE_DOUBLE, "valueOf", "(Ljava/math/BigDecimal;)" + DOUBLE_DOUBLE_DESCRIPTOR))
+                    .local(ASTORE, literal.getValue());
+        }
+        code.local(ALOAD, 1 + Z_RE).local(ASTORE, DD_SAVED_RE)
+                .local(ALOAD, 1 + Z_IM).local(ASTORE, DD_SAVED_IM)
+                .op(ICONST_1).local(ISTORE, DD_SAVE_AT)
+                .op(ICONST_0).local(ISTORE, DD_I);
+        code.mark(loop).local(ILOAD, DD_I).local(ILOAD, DD_MAX).jump(IF_ICMPGE, inside);
+        // zRe.sqr().addGreaterThanFour(zIm.sqr())
+        code.local(ALOAD, 1 + Z_RE).ref(INVOKEVIRTUAL, sqr)
+                .local(ALOAD, 1 + Z_IM).ref(INVOKEVIRTUAL, sqr)
+                .ref(INVOKEVIRTUAL, writer.methodRef(DOUBLE_DOUBLE, "addGreaterThanFour", "(" + DOUBLE_DOUBLE_DESCRIPTOR + ")Z"))
+                .jump(IFEQ, bounded)
+                .local(ILOAD, DD_I).op(IRETURN);
+        code.mark(bounded);
+        for (Instruction instruction : instructions) {
+            pushDoubleDouble(code, literals, temporaries, instruction.left());
+            switch (instruction.operation()) {
+                case ADD, SUBTRACT, MULTIPLY, DIVIDE -> {
+                    pushDoubleDouble(code, literals, temporaries, instruction.right());
+                    final String name = switch (instruction.operation()) {
+                        case ADD -> "add";
+                        case SUBTRACT -> "sub";
+                        case MULTIPLY -> "mul";
+                        default -> "div";
+                    };
+                    code.ref(INVOKEVIRTUAL, writer.methodRef(DOUBLE_DOUBLE, name, BINARY_DESCRIPTOR));
+                }
+                case SQUARE -> code.ref(INVOKEVIRTUAL, sqr);
+                case NEGATE -> code.ref(INVOKEVIRTUAL, writer.methodRef(DOUBLE_DOUBLE, "negate", UNARY_DESCRIPTOR));
+                case ABS -> code.ref(INVOKEVIRTUAL, writer.methodRef(DOUBLE_DOUBLE, "abs", UNARY_DESCRIPTOR));
+            }
+            code.local(ASTORE, temporaries + instruction.target() - 4);
+        }
+        pushDoubleDouble(code, literals, temporaries, result.re());
+        pushDoubleDouble(code, literals, temporaries, result.im());
+        code.local(ASTORE, 1 + Z_IM).local(ASTORE, 1 + Z_RE);
+        // epsilonGreaterThanDifference on both parts
+        for (int part = 0; part < 2; part++) {
+            code.local(ALOAD, 1 + (part == 0 ? Z_RE : Z_IM)).ref(INVOKEVIRTUAL, getHi)
+                    .local(ALOAD, 1 + (part == 0 ? Z_RE : Z_IM)).ref(INVOKEVIRTUAL, getLo)
+                    .local(ALOAD, part == 0 ? DD_SAVED_RE : DD_SAVED_IM).ref(INVOKEVIRTUAL, getHi)
+                    .local(ALOAD, part == 0 ? DD_SAVED_RE : DD_SAVED_IM).ref(INVOKEVIRTUAL, getLo)
+                    .local(DLOAD, DD_EPSILON).ref(INVOKESTATIC, epsilonGreaterThanDifference)
+                    .jump(IFEQ, aperiodic);
+        }
+        code.local(ILOAD, DD_MAX).op(IRETURN);
+        code.mark(aperiodic).iinc(DD_I, 1).local(ILOAD, DD_I).local(ILOAD, DD_SAVE_AT).jump(IF_ICMPNE, loop)
+                .local(ALOAD, 1 + Z_RE).local(ASTORE, DD_SAVED_RE)
+                .local(ALOAD, 1 + Z_IM).local(ASTORE, DD_SAVED_IM)
+                .local(ILOAD, DD_SAVE_AT).op(ICONST_1).op(ISHL).local(ISTORE, DD_SAVE_AT)
+                .jump(GOTO, loop);
+        code.mark(inside).local(ILOAD, DD_MAX).op(IRETURN);
+        return writer.toByteArray(CLASS_NAME, "java/lang/Object", CompiledFormula.DoubleDoubleIteration.class.getName().replace('.', '/'));
+    }
+
+    private static void collectLiteral(Map<String, Integer> literals, Operand operand) {
+        if (operand instanceof Literal literal) {
+            literals.computeIfAbsent(literal.value().toString(), k -> DD_LITERALS + literals.size());
+        }
+    }
+
+    private static void pushDoubleDouble(ClassFileWriter.Code code, Map<String, Integer> literals, int temporaries, Operand operand) {
+        switch (operand) {
+            case Literal literal -> code.local(ALOAD, literals.get(literal.value().toString()));
+            case Value value -> code.local(ALOAD, value.index() < 4 ? 1 + value.index() : temporaries + value.index() - 4);
+        }
+    }
+
+    private static void constructor(ClassFileWriter writer) {
+        writer.method("<init>", "()V", 1, 1)
+                .local(ALOAD, 0)
+                .ref(INVOKESPECIAL, writer.methodRef("java/lang/Object", "<init>", "()V"))
+                .op(RETURN);
+    }
+}
@@ -0,0 +1,151 @@
+package com.kamenbrot.fractals.expression;
+
+import java.math.BigDecimal;
+
+/**
+ * Recursive descent parser of iteration formulas in z and c, for example {@code z^2 + c} or {@code abs(z)^2 + c}.
+ * <pre>
+ * expression = term (('+' | '-') term)*
+ * term       = unary (('*' | '/') unary)*
+ * unary      = '-' unary | power
+ * power      = primary ('^' integer)?
+ * primary    = number | 'i' | 'z' | 'c' | function '(' expression ')' | '(' expression ')'
+ * function   = 'conj' | 'abs' | 're' | 'im'
+ * </pre>
+ * {@code abs} folds the real and the imaginary part separately, {@code re} and {@code im} give a real result.
+ */
+public final class FormulaParser {
+
+    private static final int MAX_EXPONENT = 64;
+
+    private final String source;
+    private int position;
+
+    private FormulaParser(String source) {
+        this.source = source;
+    }
+
+    /**
+     * @param source formula
+     * @return parsed formula
+     * @throws IllegalArgumentException if the formula is not valid
+     */
+    public static Expression parse(String source) {
+        final FormulaParser parser = new FormulaParser(source);
+        final Expression expression = parser.expression();
+        parser.skipWhitespace();
+        if (parser.position < source.length()) throw parser.error("Unexpected '" + source.charAt(parser.position) + "'");
+        return expression;
+    }
+
+    private Expression expression() {
+        Expression left = term();
+        while (true) {
+            if (accept('+')) left = new Expression.Binary(Expression.BinaryOperator.ADD, left, term());
+            else if (accept('-')) left = new Expression.Binary(Expression.BinaryOperator.SUBTRACT, left, term());
+            else return left;
+        }
+    }
+
+    private Expression term() {
+        Expression left = unary();
+        while (true) {
+            if (accept('*')) left = new Expression.Binary(Expression.BinaryOperator.MULTIPLY, left, unary());
+            else if (accept('/')) left = new Expression.Binary(Expression.BinaryOperator.DIVIDE, left, unary());
+            else return left;
+        }
+    }
+
+    private Expression unary() {
+        if (accept('-')) return new Expression.Unary(Expression.UnaryOperator.NEGATE, unary());
+        return power();
+    }
+
+    private Expression power() {
+        final Expression base = primary();
+        if (!accept('^')) return base;
+        skipWhitespace();
+        final int start = position;
+        while (position < source.length() && Character.isDigit(source.charAt(position))) position++;
+        if (start == position) throw error("Expected a positive integer exponent");
+        final int exponent;
+        try {
+            exponent = Integer.parseInt(source.substring(start, position));
+        } catch (NumberFormatException e) {
+            throw error("Exponent too large");
+        }
+        if (exponent < 1 || exponent > MAX_EXPONENT) throw error("Exponent must be between 1 and " + MAX_EXPONENT);
+        return new Expression.Power(base, exponent);
+    }
+
+    private Expression primary() {
+        skipWhitespace();
+        if (position >= source.length()) throw error("Unexpected end of formula");
+        final char next = source.charAt(position);
+        if (Character.isDigit(next) || next == '.') return number();
+        if (accept('(')) {
+            final Expression inner = expression();
+            expect(')');
+            return inner;
+        }
+        if (Character.isLetter(next)) {
+            final int start = position;
+            while (position < source.length() && Character.isLetter(source.charAt(position))) position++;
+            final String name = source.substring(start, position);
+            return switch (name) {
+                case "z", "c" -> new Expression.Variable(name);
+                case "i" -> new Expression.Constant(BigDecimal.ZERO, BigDecimal.ONE);
+                case "conj" -> function(Expression.UnaryOperator.CONJUGATE);
+                case "abs" -> function(Expression.UnaryOperator.ABS);
+                case "re" -> function(Expression.UnaryOperator.REAL);
+                case "im" -> function(Expression.UnaryOperator.IMAGINARY);
+                default -> {
+                    position = start;
+                    throw error("Unknown name '" + name + "'");
+                }
+            };
+        }
+        throw error("Unexpected '" + next + "'");
+    }
+
+    private Expression function(Expression.UnaryOperator operator) {
+        expect('(');
+        final Expression argument = expression();
+        expect(')');
+        return new Expression.Unary(operator, argument);
+    }
+
+    private Expression number() {
+        final int start = position;
+        while (position < source.length() && (Character.isDigit(source.charAt(position)) || source.charAt(position) == '.')) {
+            position++;
+        }
+        try {
+            return new Expression.Constant(new BigDecimal(source.substring(start, position)), BigDecimal.ZERO);
+        } catch (NumberFormatException e) {
+            position = start;
+            throw error("Malformed number");
+        }
+    }
+
+    private boolean accept(char expected) {
+        skipWhitespace();
+        if (position < source.length() && source.charAt(position) == expected) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char expected) {
+        if (!accept(expected)) throw error("Expected '" + expected + "'");
+    }
+
+    private void skipWhitespace() {
+        while (position < source.length() && Character.isWhitespace(source.charAt(position))) position++;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + position + " of '" + source + "'");
+    }
+}
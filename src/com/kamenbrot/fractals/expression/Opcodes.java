@@ -0,0 +1,45 @@
+package com.kamenbrot.fractals.expression;
+
+/**
+ * JVM opcodes emitted by {@link FormulaCompiler}
+ */
+final class Opcodes {
+
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int ISTORE = 0x36;
+    static final int DSTORE = 0x39;
+    static final int ASTORE = 0x3a;
+    static final int DUP = 0x59;
+    static final int DUP2 = 0x5c;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DDIV = 0x6f;
+    static final int DNEG = 0x77;
+    static final int ISHL = 0x78;
+    static final int IINC = 0x84;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFGE = 0x9c;
+    static final int IFLE = 0x9e;
+    static final int IF_ICMPNE = 0xa0;
+    static final int IF_ICMPGE = 0xa2;
+    static final int GOTO = 0xa7;
+    static final int IRETURN = 0xac;
+    static final int RETURN = 0xb1;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int NEW = 0xbb;
+    static final int WIDE = 0xc4;
+
+    private Opcodes() {
+    }
+}
@@ -0,0 +1,105 @@
+package com.kamenbrot.fractals.mandelbrot;
+
+import com.kamenbrot.fractals.DoubleDouble;
+import com.kamenbrot.fractals.FractalFormula;
+import com.kamenbrot.fractals.FractalKernel;
+import com.kamenbrot.state.GenericMandelState;
+import com.kamenbrot.state.MandelDoubleDoubleState;
+import com.kamenbrot.state.MandelState;
+
+/**
+ * z = (|Re z| + i|Im z|)^2 + c. Iterated natively in double and double-double, deeper views are iterated on their
+ * double mapping.
+ */
+public final class BurningShipFormula implements FractalFormula {
+
+    public static final BurningShipFormula INSTANCE = new BurningShipFormula();
+
+    private BurningShipFormula() {
+    }
+
+    @Override
+    public String getName() {
+        return "Burning Ship";
+    }
+
+    @Override
+    public FractalKernel kernel(MandelState mandelState) {
+        final int maxIterations = mandelState.getMaxIterations();
+        final double epsilon = CpuMandelbrot.periodicityTolerance(mandelState);
+        return switch (mandelState) {
+            case MandelDoubleDoubleState s -> {
+                final DoubleDoubleViewport viewport = DoubleDoubleViewport.of(s);
+                yield (x, y) -> fractalIteration(viewport.re(x), viewport.im(y), maxIterations, epsilon);
+            }
+            case GenericMandelState<?> s -> {
+                final DoubleViewport viewport = DoubleViewport.of(s);
+                yield (x, y) -> fractalIteration(viewport.re(x), viewport.im(y), maxIterations, epsilon);
+            }
+            default -> throw new UnsupportedOperationException("State Not Implemented");
+        };
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    /**
+     * Escape time iteration from z = 0 with the same cycle detection as
+     * {@link CpuMandelbrot#fractalIteration(double, double, int, double, double, double)}.
+     */
+    static int fractalIteration(double cRe, double cIm, int maxIterations, double epsilon) {
+        double zRe = 0.0;
+        double zIm = 0.0;
+        double savedRe = zRe;
+        double savedIm = zIm;
+        int saveAt = 1;
+        for (int i = 0; i < maxIterations; ++i) {
+            final double zReSq = zRe * zRe;
+            final double zImSq = zIm * zIm;
+            if (zReSq + zImSq > 4) return i;
+            final double t = Math.abs(zRe * zIm);
+            zRe = zReSq - zImSq + cRe;
+            zIm = t + t + cIm;
+            if (Math.abs(zRe - savedRe) + Math.abs(zIm - savedIm) < epsilon) {
+                return maxIterations;
+            }
+            if (i + 1 == saveAt) {
+                savedRe = zRe;
+                savedIm = zIm;
+                saveAt <<= 1;
+            }
+        }
+        return maxIterations;
+    }
+
+    /**
+     * Double-double version of {@link #fractalIteration(double, double, int, double)}
+     */
+    static int fractalIteration(DoubleDouble cRe, DoubleDouble cIm, int maxIterations, double epsilon) {
+        DoubleDouble zRe = DoubleDouble.ZERO;
+        DoubleDouble zIm = DoubleDouble.ZERO;
+        DoubleDouble savedRe = zRe;
+        DoubleDouble savedIm = zIm;
+        int saveAt = 1;
+        for (int i = 0; i < maxIterations; ++i) {
+            final DoubleDouble zReSq = zRe.sqr();
+            final DoubleDouble zImSq = zIm.sqr();
+            if (zReSq.addGreaterThanFour(zImSq)) return i;
+            final DoubleDouble t = zRe.mul(zIm).abs();
+            zRe = zReSq.sub(zImSq).add(cRe);
+            zIm = t.add(t).add(cIm);
+            if (DoubleDouble.epsilonGreaterThanDifference(zRe.getHi(), zRe.getLo(), savedRe.getHi(), savedRe.getLo(), epsilon) &&
+                    DoubleDouble.epsilonGreaterThanDifference(zIm.getHi(), zIm.getLo(), savedIm.getHi(), savedIm.getLo(), epsilon)) {
+                return maxIterations;
+            }
+            if (i + 1 == saveAt) {
+                savedRe = zRe;
+                savedIm = zIm;
+                saveAt <<= 1;
+            }
+        }
+        return maxIterations;
+    }
+}
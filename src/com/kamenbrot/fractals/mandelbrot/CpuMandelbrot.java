@@ -1,101 +1,610 @@
 package com.kamenbrot.fractals.mandelbrot;
 
-import com.kamenbrot.fractals.ComplexMapping;
 import com.kamenbrot.fractals.DoubleDouble;
-import com.kamenbrot.state.MandelDoubleDoubleState;
-import com.kamenbrot.state.MandelDoubleState;
+import com.kamenbrot.fractals.FixedPoint;
+import com.kamenbrot.fractals.FloatExp;
+import com.kamenbrot.fractals.ResumableKernel;
 import com.kamenbrot.state.MandelState;
 
 import java.math.BigDecimal;
 import java.math.MathContext;
-import java.math.RoundingMode;
 
 public class CpuMandelbrot {
-    private static final BigDecimal FOUR = new BigDecimal(4, new MathContext(50, RoundingMode.HALF_DOWN));
-    public static final double EPSILON = 1e-28;
+    /**
+     * Fraction of the pixel spacing under which two points of an orbit are considered the same
+     */
+    public static final double PERIODICITY_TOLERANCE = 1e-3;
+    /**
+     * Points rounded from double-double closer than this to the cardioid or a bulb are iterated anyway
+     */
+    static final double INTERIOR_MARGIN = 1e-12;
+    /**
+     * Real part given to lanes of a vector row that are known to be inside so they escape straight away
+     */
+    static final double ESCAPING_RE = 4.0;
+    /**
+     * Binary exponent from which a perturbation delta is handed from the extended exponent loop to plain doubles
+     */
+    private static final long DOUBLE_DELTA_EXPONENT = -900;
+    private static final int MAX_SCALB = 4096;
+    /**
+     * Squared escape radius of the distance estimator, the estimate gets more accurate the further z escapes
+     */
+    private static final double DISTANCE_ESCAPE_SQ = 1 << 16;
+    /**
+     * Largest multiplier of a cycle trusted to attract an orbit that came back within a pixel
+     */
+    private static final double INTERIOR_MULTIPLIER = 0.1;
+    /**
+     * Distance estimates are quantised to this many shades per pixel of distance from the boundary
+     */
+    public static final int DISTANCE_SHADES_PER_PIXEL = 32;
+    /**
+     * Distance in pixels from the boundary from which every pixel gets the same shade
+     */
+    public static final int DISTANCE_SATURATION_PIXELS = 8;
+    public static final int DISTANCE_SHADES = DISTANCE_SHADES_PER_PIXEL * DISTANCE_SATURATION_PIXELS;
+    /**
+     * Whether {@link CpuVectorMandelbrot} can be used, needs the incubator module and can be disabled with
+     * {@code -Dkamenbrot.vector=false}
+     */
+    public static final boolean VECTOR_KERNEL = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && Boolean.parseBoolean(System.getProperty("kamenbrot.vector", "true"));
 
     public static int fractalIteration(double zRe, double zIm, int maxIterations, double cRe, double cIm, MandelState mandelState) {
-        double savedRe = 0;
-        double savedIm = 0;
+        return fractalIteration(zRe, zIm, maxIterations, cRe, cIm, periodicityTolerance(mandelState));
+    }
+
+    /**
+     * Escape time iteration with Brent cycle detection. z is saved at every power of two iteration and each following z
+     * is compared against it, an orbit that comes back to the saved z within the tolerance is periodic and never escapes.
+     *
+     * @param epsilon periodicity tolerance, see {@link #periodicityTolerance(MandelState)}
+     * @return iterations before escape or max iterations
+     */
+    public static int fractalIteration(double zRe, double zIm, int maxIterations, double cRe, double cIm, double epsilon) {
+        return brent(zRe, zIm, maxIterations, cRe, cIm, epsilon, false);
+    }
+
+    /**
+     * Same iteration as {@link #fractalIteration(double, double, int, double, double, double)} reporting the cycle it
+     * detected instead.
+     *
+     * @return period of the attracting cycle or 0 if the orbit escaped or no cycle was found within max iterations
+     */
+    public static int findPeriod(double zRe, double zIm, int maxIterations, double cRe, double cIm, double epsilon) {
+        return brent(zRe, zIm, maxIterations, cRe, cIm, epsilon, true);
+    }
+
+    /**
+     * The loop of {@link #fractalIteration(double, double, int, double, double, double)} and
+     * {@link #findPeriod(double, double, int, double, double, double)}, the flag only picks what is returned.
+     */
+    private static int brent(double zRe, double zIm, int maxIterations, double cRe, double cIm, double epsilon, boolean period) {
+        double savedRe = zRe;
+        double savedIm = zIm;
+        int saveAt = 1;
+        int savedIteration = 0;
         for (int i = 0; i < maxIterations; ++i) {
             final double zReSq = zRe * zRe;
             final double zImSq = zIm * zIm;
-            if (i % 20 == 0) {
+            if (zReSq + zImSq > 4) return period ? 0 : i;
+            double t = zRe * zIm;
+            zRe = zReSq - zImSq + cRe;
+            zIm = t + t + cIm;
+            // z = z.times(z).plus(c);
+            if (Math.abs(zRe - savedRe) + Math.abs(zIm - savedIm) < epsilon) {
+                return period ? i + 1 - savedIteration : maxIterations;
+            }
+            if (i + 1 == saveAt) {
                 savedRe = zRe;
                 savedIm = zIm;
-            } else if (Math.abs(zRe - savedRe) < EPSILON &&
-                    Math.abs(zIm - savedIm) < EPSILON) {
-                return maxIterations;
+                savedIteration = saveAt;
+                saveAt <<= 1;
             }
+        }
+        return period ? 0 : maxIterations;
+    }
+
+    /**
+     * {@link #fractalIteration(double, double, int, double, double, double)} continued from the z stored for a pixel,
+     * see {@link ResumableKernel}. Cycle detection starts over from the stored z.
+     *
+     * @param iterations iterations the stored z is at
+     * @return iterations before escape or max iterations
+     */
+    public static int fractalIteration(double[] orbits, int index, int iterations, int maxIterations, double cRe, double cIm, double epsilon) {
+        double zRe = orbits[2 * index];
+        double zIm = orbits[2 * index + 1];
+        double savedRe = zRe;
+        double savedIm = zIm;
+        int saveAt = 1;
+        for (int i = iterations; i < maxIterations; ++i) {
+            final double zReSq = zRe * zRe;
+            final double zImSq = zIm * zIm;
             if (zReSq + zImSq > 4) return i;
             double t = zRe * zIm;
             zRe = zReSq - zImSq + cRe;
             zIm = t + t + cIm;
-            // z = z.times(z).plus(c);
+            if (Math.abs(zRe - savedRe) + Math.abs(zIm - savedIm) < epsilon) {
+                orbits[2 * index] = ResumableKernel.INSIDE;
+                return maxIterations;
+            }
+            if (i + 1 - iterations == saveAt) {
+                savedRe = zRe;
+                savedIm = zIm;
+                saveAt <<= 1;
+            }
         }
+        orbits[2 * index] = zRe;
+        orbits[2 * index + 1] = zIm;
         return maxIterations;
     }
 
-    public static int fractalIteration(DoubleDouble zRe, DoubleDouble zIm, int maxIterations, DoubleDouble cRe, DoubleDouble cIm, MandelState mandelState) {
-        DoubleDouble savedRe = null;
-        DoubleDouble savedIm = null;
+    /**
+     * Single precision {@link #fractalIteration(double, double, int, double, double, double)} for preview frames, only
+     * fit for views whose pixels float can still tell apart.
+     */
+    public static int fractalIteration(float zRe, float zIm, int maxIterations, float cRe, float cIm, float epsilon) {
+        float savedRe = zRe;
+        float savedIm = zIm;
+        int saveAt = 1;
         for (int i = 0; i < maxIterations; ++i) {
-            final DoubleDouble zReSq = zRe.mul(zRe);
-            final DoubleDouble zImSq = zIm.mul(zIm);
-
-            if (i % 20 == 0) {
+            final float zReSq = zRe * zRe;
+            final float zImSq = zIm * zIm;
+            if (zReSq + zImSq > 4) return i;
+            float t = zRe * zIm;
+            zRe = zReSq - zImSq + cRe;
+            zIm = t + t + cIm;
+            if (Math.abs(zRe - savedRe) + Math.abs(zIm - savedIm) < epsilon) {
+                return maxIterations;
+            }
+            if (i + 1 == saveAt) {
                 savedRe = zRe;
                 savedIm = zIm;
-            } else if (zRe.epsilonGreaterThanDifference(savedRe) &&
-                    zIm.epsilonGreaterThanDifference(savedIm)) {
-                return maxIterations;
+                saveAt <<= 1;
             }
-
-            if (zReSq.addGreaterThanFour(zImSq)) return i;
-            DoubleDouble zReCSq = zReSq.sub(zImSq);
-            DoubleDouble t = zRe.mul(zIm);
-            DoubleDouble zImCSq = t.add(t);
-            zRe = zReCSq.add(cRe);
-            zIm = zImCSq.add(cIm);
-            // z = z.times(z).plus(c);
         }
         return maxIterations;
     }
 
-    public static int mandelbrotAt(int x, int y, MandelState mandelState) {
-        return switch (mandelState) {
-            case MandelState s when s.isPerformanceToggled() && (x % s.maxSkipped() == 0 && y % s.maxSkipped() == 0) -> {
-                yield mandelState.getMaxIterations();
+    /**
+     * Escape time iteration tracking the derivative of z alongside it, by c for the Mandelbrot set or by the starting z
+     * for Julia sets, to estimate the distance from the boundary. The true distance lies between a quarter of the
+     * estimate and the estimate itself.
+     * <p>
+     * The derivative of z by the z at the last Brent save point is tracked as well. It is the multiplier of the cycle
+     * through that point, an orbit coming back within a pixel through a strongly contracting cycle is attracted to it
+     * and stops as interior without waiting for it to converge within the periodicity tolerance.
+     *
+     * @param pixelSpacing pixel spacing of the view
+     * @param julia        whether z is the pixel and c the parameter of a Julia set
+     * @return distance estimate of an escaping point, {@link Double#MIN_VALUE} if its derivative overflowed, 0 for
+     * interior points and points still undecided after max iterations
+     */
+    public static double distanceEstimate(double zRe, double zIm, int maxIterations, double cRe, double cIm, double pixelSpacing, boolean julia) {
+        final double epsilon = pixelSpacing * PERIODICITY_TOLERANCE;
+        final double dConstant = julia ? 0.0 : 1.0;
+        double dRe = julia ? 1.0 : 0.0;
+        double dIm = 0.0;
+        double multiplierRe = 1.0;
+        double multiplierIm = 0.0;
+        double savedRe = zRe;
+        double savedIm = zIm;
+        int saveAt = 1;
+        for (int i = 0; i < maxIterations; ++i) {
+            final double zReSq = zRe * zRe;
+            final double zImSq = zIm * zIm;
+            final double normSq = zReSq + zImSq;
+            if (normSq > DISTANCE_ESCAPE_SQ) {
+                final double norm = Math.sqrt(normSq);
+                final double distance = 2 * norm * Math.log(norm) / Math.hypot(dRe, dIm);
+                // an overflown derivative means the point is as good as on the boundary, 0 would be interior
+                return distance > 0 ? distance : Double.MIN_VALUE;
+            }
+            // d = 2zd + 1 by c, d = 2zd by z
+            final double newDRe = 2 * (zRe * dRe - zIm * dIm) + dConstant;
+            dIm = 2 * (zRe * dIm + zIm * dRe);
+            dRe = newDRe;
+            final double newMultiplierRe = 2 * (zRe * multiplierRe - zIm * multiplierIm);
+            multiplierIm = 2 * (zRe * multiplierIm + zIm * multiplierRe);
+            multiplierRe = newMultiplierRe;
+            final double t = zRe * zIm;
+            zRe = zReSq - zImSq + cRe;
+            zIm = t + t + cIm;
+
+            final double returned = Math.abs(zRe - savedRe) + Math.abs(zIm - savedIm);
+            if (returned < epsilon) return 0.0;
+            if (returned < pixelSpacing && multiplierRe * multiplierRe + multiplierIm * multiplierIm < INTERIOR_MULTIPLIER * INTERIOR_MULTIPLIER) {
+                return 0.0;
+            }
+            if (i + 1 == saveAt) {
+                savedRe = zRe;
+                savedIm = zIm;
+                multiplierRe = 1.0;
+                multiplierIm = 0.0;
+                saveAt <<= 1;
+            }
+        }
+        return 0.0;
+    }
+
+    /**
+     * @param distance distance estimate, see {@link #distanceEstimate}
+     * @return shade of the distance in [0, {@link #DISTANCE_SHADES}) or max iterations for interior points
+     */
+    public static int distanceShade(double distance, MandelState mandelState) {
+        if (distance == 0.0) return mandelState.getMaxIterations();
+        final double shade = distance / mandelState.getPixelSpacing() * DISTANCE_SHADES_PER_PIXEL;
+        return (int) Math.min(Math.min(DISTANCE_SHADES - 1, mandelState.getMaxIterations() - 1), shade);
+    }
+
+    /**
+     * An orbit coming back closer than a small fraction of a pixel is treated as periodic. Deeper views need a
+     * tighter tolerance, shallow ones catch their cycles sooner with a looser one.
+     *
+     * @param mandelState state
+     * @return periodicity tolerance for the current pixel spacing
+     */
+    public static double periodicityTolerance(MandelState mandelState) {
+        return mandelState.getPixelSpacing() * PERIODICITY_TOLERANCE;
+    }
+
+    public static int fractalIteration(DoubleDouble zRe, DoubleDouble zIm, int maxIterations, DoubleDouble cRe, DoubleDouble cIm, MandelState mandelState) {
+        return fractalIteration(zRe.getHi(), zRe.getLo(), zIm.getHi(), zIm.getLo(), maxIterations,
+                cRe.getHi(), cRe.getLo(), cIm.getHi(), cIm.getLo(), periodicityTolerance(mandelState));
+    }
+
+    /**
+     * Allocation free {@link #fractalIteration(DoubleDouble, DoubleDouble, int, DoubleDouble, DoubleDouble, MandelState)}
+     * with the {@link DoubleDouble} arithmetic inlined on the hi and lo parts. Every operation is carried out in the
+     * same order as the {@link DoubleDouble} methods so the results are the same bit for bit. Cycles are detected the
+     * same way as in {@link #fractalIteration(double, double, int, double, double, double)}.
+     */
+    public static int fractalIteration(double zReHi, double zReLo, double zImHi, double zImLo, int maxIterations,
+                                       double cReHi, double cReLo, double cImHi, double cImLo, double epsilon) {
+        double savedReHi = zReHi;
+        double savedReLo = zReLo;
+        double savedImHi = zImHi;
+        double savedImLo = zImLo;
+        int saveAt = 1;
+        for (int i = 0; i < maxIterations; ++i) {
+            // zRe.sqr()
+            double zReSqHi;
+            double zReSqLo;
+            {
+                double p = zReHi * zReHi;
+                double err = Math.fma(zReHi, zReHi, -p);
+                err += Math.fma(zReHi + zReHi, zReLo, zReLo * zReLo);
+                zReSqHi = p + err;
+                zReSqLo = err - (zReSqHi - p);
+            }
+
+            // zIm.sqr()
+            double zImSqHi;
+            double zImSqLo;
+            {
+                double p = zImHi * zImHi;
+                double err = Math.fma(zImHi, zImHi, -p);
+                err += Math.fma(zImHi + zImHi, zImLo, zImLo * zImLo);
+                zImSqHi = p + err;
+                zImSqLo = err - (zImSqHi - p);
+            }
+
+            if (DoubleDouble.addGreaterThanFour(zReSqHi, zReSqLo, zImSqHi, zImSqLo)) return i;
+
+            // zRe.mul(zIm)
+            double tHi;
+            double tLo;
+            {
+                double p = zReHi * zImHi;
+                double err = Math.fma(zReHi, zImHi, -p);
+                err += Math.fma(zReLo, zImHi, Math.fma(zReHi, zImLo, zReLo * zImLo));
+                tHi = p + err;
+                tLo = err - (tHi - p);
             }
-            case MandelDoubleState doubleState -> {
-                final double real = ComplexMapping.mapComplex(x, mandelState.getMandelWidth(), doubleState.getMinX(), doubleState.getMaxX());
-                final double imaginary = ComplexMapping.mapComplex(y, mandelState.getMandelHeight(), doubleState.getMinY(), doubleState.getMaxY());
-                yield fractalIteration(0.0d, 0.0d, mandelState.getMaxIterations(), real, imaginary, mandelState);
+
+            // zReSq.sub(zImSq).add(cRe)
+            {
+                double s = zReSqHi - zImSqHi;
+                double v = s - zReSqHi;
+                double e = (zReSqHi - (s - v)) + (-zImSqHi - v);
+                double t = zReSqLo - zImSqLo;
+                double w = t - zReSqLo;
+                double f = (zReSqLo - (t - w)) + (-zImSqLo - w);
+                e += t;
+                double midHi = s + e;
+                e = e - (midHi - s) + f;
+                double diffHi = midHi + e;
+                double diffLo = e - (diffHi - midHi);
+
+                s = diffHi + cReHi;
+                v = s - diffHi;
+                e = (diffHi - (s - v)) + (cReHi - v);
+                t = diffLo + cReLo;
+                w = t - diffLo;
+                f = (diffLo - (t - w)) + (cReLo - w);
+                e += t;
+                midHi = s + e;
+                e = e - (midHi - s) + f;
+                zReHi = midHi + e;
+                zReLo = e - (zReHi - midHi);
+            }
+
+            // t.add(t) is an exact doubling, then .add(cIm)
+            {
+                tHi += tHi;
+                tLo += tLo;
+                double s = tHi + cImHi;
+                double v = s - tHi;
+                double e = (tHi - (s - v)) + (cImHi - v);
+                double t = tLo + cImLo;
+                double w = t - tLo;
+                double f = (tLo - (t - w)) + (cImLo - w);
+                e += t;
+                double midHi = s + e;
+                e = e - (midHi - s) + f;
+                zImHi = midHi + e;
+                zImLo = e - (zImHi - midHi);
             }
-            case MandelDoubleDoubleState doubleState -> {
-                final DoubleDouble real = ComplexMapping.mapComplexOptimised(doubleState.cachedValue(x), doubleState.cachedValue(mandelState.getMandelWidth()), doubleState.getMinX(), doubleState.getMaxX());
-                final DoubleDouble imaginary = ComplexMapping.mapComplexOptimised(doubleState.cachedValue(y), doubleState.cachedValue(mandelState.getMandelHeight()), doubleState.getMinY(), doubleState.getMaxY());
-                yield fractalIteration(DoubleDouble.ZERO, DoubleDouble.ZERO, mandelState.getMaxIterations(), real, imaginary, mandelState);
+            // z = z.times(z).plus(c);
+
+            if (DoubleDouble.epsilonGreaterThanDifference(zReHi, zReLo, savedReHi, savedReLo, epsilon) &&
+                    DoubleDouble.epsilonGreaterThanDifference(zImHi, zImLo, savedImHi, savedImLo, epsilon)) {
+                return maxIterations;
             }
-            default -> throw new UnsupportedOperationException("State Not Implemented");
-        };
+            if (i + 1 == saveAt) {
+                savedReHi = zReHi;
+                savedReLo = zReLo;
+                savedImHi = zImHi;
+                savedImLo = zImLo;
+                saveAt <<= 1;
+            }
+        }
+        return maxIterations;
     }
 
-    private int mandelbrot(BigDecimal real, BigDecimal imaginary, int maxIterations, MathContext mc) {
-        BigDecimal zRe = BigDecimal.ZERO;
-        BigDecimal zIm = BigDecimal.ZERO;
+    /**
+     * Iterates a single reference point at arbitrary precision and records every z along the way rounded to double.
+     *
+     * @param real          real part of the reference point
+     * @param imaginary     imaginary part of the reference point
+     * @param maxIterations max iterations
+     * @param mc            precision of the reference point, has to resolve the pixel spacing
+     * @return the reference orbit
+     */
+    public static ReferenceOrbit referenceOrbit(BigDecimal real, BigDecimal imaginary, int maxIterations, MathContext mc) {
+        final int fractionLimbs = FixedPoint.fractionLimbsForDigits(mc.getPrecision());
+        return referenceOrbit(FixedPoint.valueOf(real, fractionLimbs), FixedPoint.valueOf(imaginary, fractionLimbs), maxIterations);
+    }
+
+    /**
+     * {@link #referenceOrbit(BigDecimal, BigDecimal, int, MathContext)} on fixed point coordinates
+     */
+    public static ReferenceOrbit referenceOrbit(FixedPoint real, FixedPoint imaginary, int maxIterations) {
+        final int fractionLimbs = real.getFractionLimbs();
+        final double[] orbitRe = new double[maxIterations + 1];
+        final double[] orbitIm = new double[maxIterations + 1];
+        final FixedPoint zRe = new FixedPoint(fractionLimbs);
+        final FixedPoint zIm = new FixedPoint(fractionLimbs);
+        final FixedPoint zReSq = new FixedPoint(fractionLimbs);
+        final FixedPoint zImSq = new FixedPoint(fractionLimbs);
+        final FixedPoint t = new FixedPoint(fractionLimbs);
+        final long[] scratch = FixedPoint.newScratch(fractionLimbs);
 
         int n = 0;
-        while (zRe.multiply(zRe, mc).add(zIm.multiply(zIm, mc), mc)
-                .compareTo(FOUR)
-                <= 0 && n < maxIterations) {
-            final BigDecimal newRe = zRe.multiply(zRe, mc).subtract(zIm.multiply(zIm, mc), mc).add(real, mc);
-            final BigDecimal newIm = zRe.multiply(zIm, mc).multiply(BigDecimal.TWO, mc).add(imaginary, mc);
-
-            zRe = newRe;
-            zIm = newIm;
+        orbitRe[n] = 0.0;
+        orbitIm[n] = 0.0;
+        while (n < maxIterations) {
+            zReSq.sqr(zRe, scratch);
+            zImSq.sqr(zIm, scratch);
+            if (t.add(zReSq, zImSq).exceeds(4)) break;
+            t.mul(zRe, zIm, scratch);
+            zIm.twice(t).add(zIm, imaginary);
+            zRe.sub(zReSq, zImSq).add(zRe, real);
             n++;
+            orbitRe[n] = zRe.doubleValue();
+            orbitIm[n] = zIm.doubleValue();
         }
-        return n;
+        return new ReferenceOrbit(orbitRe, orbitIm, n + 1);
+    }
+
+    /**
+     * Fixed point version of {@link #fractalIteration(double, double, int, double, double, double)}. Every number is
+     * allocated once up front, the loop itself does not allocate.
+     *
+     * @param cRe           real part of c
+     * @param cIm           imaginary part of c
+     * @param maxIterations max iterations
+     * @param epsilon       periodicity tolerance
+     * @return iterations before escape or max iterations
+     */
+    public static int fractalIteration(FixedPoint cRe, FixedPoint cIm, int maxIterations, double epsilon) {
+        return fractalIteration(cRe, cIm, maxIterations, epsilon, new FixedPointScratch(cRe.getFractionLimbs()));
+    }
+
+    /**
+     * {@link #fractalIteration(FixedPoint, FixedPoint, int, double)} working in the values of the scratch instead of
+     * allocating its own.
+     *
+     * @param scratch with the fraction limbs of c, may hold c itself
+     */
+    public static int fractalIteration(FixedPoint cRe, FixedPoint cIm, int maxIterations, double epsilon, FixedPointScratch scratch) {
+        final FixedPoint zRe = scratch.zRe.clear();
+        final FixedPoint zIm = scratch.zIm.clear();
+        final FixedPoint zReSq = scratch.zReSq;
+        final FixedPoint zImSq = scratch.zImSq;
+        final FixedPoint t = scratch.t;
+        final FixedPoint savedRe = scratch.savedRe.clear();
+        final FixedPoint savedIm = scratch.savedIm.clear();
+        final long[] limbs = scratch.limbs;
+
+        for (int i = 0, saveAt = 1; i < maxIterations; ++i) {
+            zReSq.sqr(zRe, limbs);
+            zImSq.sqr(zIm, limbs);
+            if (t.add(zReSq, zImSq).exceeds(4)) return i;
+            t.mul(zRe, zIm, limbs);
+            zIm.twice(t).add(zIm, cIm);
+            zRe.sub(zReSq, zImSq).add(zRe, cRe);
+
+            if (Math.abs(t.sub(zRe, savedRe).doubleValue()) + Math.abs(t.sub(zIm, savedIm).doubleValue()) < epsilon) {
+                return maxIterations;
+            }
+            if (i + 1 == saveAt) {
+                savedRe.set(zRe);
+                savedIm.set(zIm);
+                saveAt <<= 1;
+            }
+        }
+        return maxIterations;
+    }
+
+    /**
+     * Working values of the fixed point iteration of one thread, reused from pixel to pixel. The pixel coordinates can
+     * be mapped into {@link #cRe} and {@link #cIm}.
+     */
+    public static final class FixedPointScratch {
+
+        public final FixedPoint cRe;
+        public final FixedPoint cIm;
+        private final FixedPoint zRe;
+        private final FixedPoint zIm;
+        private final FixedPoint zReSq;
+        private final FixedPoint zImSq;
+        private final FixedPoint t;
+        private final FixedPoint savedRe;
+        private final FixedPoint savedIm;
+        private final long[] limbs;
+
+        public FixedPointScratch(int fractionLimbs) {
+            this.cRe = new FixedPoint(fractionLimbs);
+            this.cIm = new FixedPoint(fractionLimbs);
+            this.zRe = new FixedPoint(fractionLimbs);
+            this.zIm = new FixedPoint(fractionLimbs);
+            this.zReSq = new FixedPoint(fractionLimbs);
+            this.zImSq = new FixedPoint(fractionLimbs);
+            this.t = new FixedPoint(fractionLimbs);
+            this.savedRe = new FixedPoint(fractionLimbs);
+            this.savedIm = new FixedPoint(fractionLimbs);
+            this.limbs = FixedPoint.newScratch(fractionLimbs);
+        }
+    }
+
+    /**
+     * Perturbation iteration of a pixel at delta dc from the reference point of the orbit. Only the delta from the
+     * reference orbit is iterated which stays small enough for a double even when the pixel coordinates do not.
+     * <p>
+     * When |Z + dz| drops below |dz| the delta loses precision relative to the pixel orbit (a glitch) so it is rebased
+     * to the start of the reference orbit. The same happens when the reference escapes before the pixel does.
+     *
+     * @param dcRe          real delta from the reference point
+     * @param dcIm          imaginary delta from the reference point
+     * @param maxIterations max iterations
+     * @param orbit         reference orbit
+     * @return iterations before escape or max iterations
+     */
+    public static int perturbationIteration(double dcRe, double dcIm, int maxIterations, ReferenceOrbit orbit) {
+        return perturbationIteration(0.0, 0.0, dcRe, dcIm, 0, 0, maxIterations, orbit);
+    }
+
+    /**
+     * {@link #perturbationIteration(double, double, int, ReferenceOrbit)} resumed from iteration i at reference index m
+     */
+    private static int perturbationIteration(double dzRe, double dzIm, double dcRe, double dcIm, int i, int m, int maxIterations, ReferenceOrbit orbit) {
+        final int lastIteration = orbit.lastIteration();
+        for (; i < maxIterations; ++i) {
+            final double refRe = orbit.re(m);
+            final double refIm = orbit.im(m);
+            final double zRe = refRe + dzRe;
+            final double zIm = refIm + dzIm;
+            final double zMagSq = zRe * zRe + zIm * zIm;
+            if (zMagSq > 4) return i;
+            if (zMagSq < dzRe * dzRe + dzIm * dzIm || m == lastIteration) {
+                // glitch or reference escaped - rebase onto Z_0 = 0
+                dzRe = zRe;
+                dzIm = zIm;
+                m = 0;
+            }
+            // dz = (2Z + dz) * dz + dc
+            final double sumRe = 2 * orbit.re(m) + dzRe;
+            final double sumIm = 2 * orbit.im(m) + dzIm;
+            final double newRe = sumRe * dzRe - sumIm * dzIm + dcRe;
+            dzIm = sumRe * dzIm + sumIm * dzRe + dcIm;
+            dzRe = newRe;
+            m++;
+        }
+        return maxIterations;
+    }
+
+    /**
+     * {@link #perturbationIteration(double, double, int, ReferenceOrbit)} for deltas below the double range. The delta
+     * is kept as two double mantissas sharing one {@code long} exponent, the same representation as {@link FloatExp}
+     * but without allocating, until it grows big enough for plain doubles and the double loop takes over.
+     *
+     * @param dcRe          real delta from the reference point
+     * @param dcIm          imaginary delta from the reference point
+     * @param maxIterations max iterations
+     * @param orbit         reference orbit
+     * @return iterations before escape or max iterations
+     */
+    public static int perturbationIteration(FloatExp dcRe, FloatExp dcIm, int maxIterations, ReferenceOrbit orbit) {
+        final long dcExp = Math.max(dcRe.getExponent(), dcIm.getExponent());
+        final double dcMantissaRe = Math.scalb(dcRe.getMantissa(), clampExponent(dcRe.getExponent() - dcExp));
+        final double dcMantissaIm = Math.scalb(dcIm.getMantissa(), clampExponent(dcIm.getExponent() - dcExp));
+        final int lastIteration = orbit.lastIteration();
+        // dz = (dzRe, dzIm) * 2^dzExp
+        double dzRe = 0.0;
+        double dzIm = 0.0;
+        long dzExp = dcExp;
+        int m = 0;
+        for (int i = 0; i < maxIterations; ++i) {
+            if (dzExp >= DOUBLE_DELTA_EXPONENT) {
+                final int exp = clampExponent(dzExp);
+                final int cExp = clampExponent(dcExp);
+                return perturbationIteration(Math.scalb(dzRe, exp), Math.scalb(dzIm, exp),
+                        Math.scalb(dcMantissaRe, cExp), Math.scalb(dcMantissaIm, cExp), i, m, maxIterations, orbit);
+            }
+            final int exp = clampExponent(dzExp);
+            final double refRe = orbit.re(m);
+            final double refIm = orbit.im(m);
+            final double zRe = refRe + Math.scalb(dzRe, exp);
+            final double zIm = refIm + Math.scalb(dzIm, exp);
+            final double zMagSq = zRe * zRe + zIm * zIm;
+            if (zMagSq > 4) return i;
+            if (m == lastIteration) {
+                // the reference escaped so z is far outside the range of the delta
+                return perturbationIteration(zRe, zIm, Math.scalb(dcMantissaRe, clampExponent(dcExp)), Math.scalb(dcMantissaIm, clampExponent(dcExp)), i, 0, maxIterations, orbit);
+            }
+            if (Math.scalb(zMagSq, clampExponent(-2 * dzExp)) < dzRe * dzRe + dzIm * dzIm) {
+                // glitch, |Z| is below 2|dz| so it fits the exponent of the delta
+                dzRe += Math.scalb(refRe, -exp);
+                dzIm += Math.scalb(refIm, -exp);
+                m = 0;
+            }
+            // dz = (2Z + dz) * dz + dc
+            final double sumRe = 2 * orbit.re(m) + Math.scalb(dzRe, exp);
+            final double sumIm = 2 * orbit.im(m) + Math.scalb(dzIm, exp);
+            final int dcShift = clampExponent(dcExp - dzExp);
+            double newRe = sumRe * dzRe - sumIm * dzIm + Math.scalb(dcMantissaRe, dcShift);
+            double newIm = sumRe * dzIm + sumIm * dzRe + Math.scalb(dcMantissaIm, dcShift);
+            final double magnitude = Math.max(Math.abs(newRe), Math.abs(newIm));
+            if (magnitude != 0.0) {
+                final int shift = Math.getExponent(magnitude);
+                newRe = Math.scalb(newRe, -shift);
+                newIm = Math.scalb(newIm, -shift);
+                dzExp += shift;
+            }
+            dzRe = newRe;
+            dzIm = newIm;
+            m++;
+        }
+        return maxIterations;
+    }
+
+    /**
+     * Binary exponents this far apart already under or overflow a double, clamping keeps them in the int range
+     */
+    private static int clampExponent(long exponent) {
+        return (int) Math.max(-MAX_SCALB, Math.min(MAX_SCALB, exponent));
     }
 }
@@ -0,0 +1,184 @@
+package com.kamenbrot.fractals.mandelbrot;
+
+import com.kamenbrot.fractals.ResumableKernel;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD version of {@link CpuMandelbrot#fractalIteration(double, double, int, double, double, com.kamenbrot.state.MandelState)}
+ * iterating one lane per pixel. Lanes that escaped or were found periodic are masked out and stop counting, the loop
+ * ends once every lane is done. Cycles are detected with the same power of two save points for every lane.
+ * <p>
+ * The lanes apply the escape and periodicity tests of the scalar loop, but the results are not promised to match it
+ * pixel for pixel: lanes that are done keep being iterated until the whole vector is, so the z left for an escaped
+ * lane is not the one the scalar loop stops at, and a lane can only be told periodic while it is still active.
+ * <p>
+ * Needs {@code --add-modules jdk.incubator.vector}, check {@link CpuMandelbrot#VECTOR_KERNEL} before touching this class.
+ */
+public class CpuVectorMandelbrot {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final ThreadLocal<RowBuffers> ROW_BUFFERS = ThreadLocal.withInitial(RowBuffers::new);
+
+    /**
+     * Lane inputs of a row segment. Every thread keeps its own, grown to the longest segment it iterated, so rows do
+     * not allocate them again. Only the kernels of this package fill and read them.
+     */
+    static final class RowBuffers {
+
+        double[] zRe = new double[0];
+        double[] zIm = new double[0];
+        double[] cRe = new double[0];
+        double[] cIm = new double[0];
+        float[] floatZRe = new float[0];
+        float[] floatZIm = new float[0];
+        float[] floatCRe = new float[0];
+        float[] floatCIm = new float[0];
+        boolean[] inside = new boolean[0];
+
+        private RowBuffers() {
+        }
+
+        /**
+         * Grows the double and inside buffers to the length, their contents are undefined.
+         */
+        RowBuffers ofDouble(int length) {
+            if (zRe.length < length) {
+                zRe = new double[length];
+                zIm = new double[length];
+                cRe = new double[length];
+                cIm = new double[length];
+            }
+            if (inside.length < length) inside = new boolean[length];
+            return this;
+        }
+
+        /**
+         * Grows the float and inside buffers to the length, their contents are undefined.
+         */
+        RowBuffers ofFloat(int length) {
+            if (floatZRe.length < length) {
+                floatZRe = new float[length];
+                floatZIm = new float[length];
+                floatCRe = new float[length];
+                floatCIm = new float[length];
+            }
+            if (inside.length < length) inside = new boolean[length];
+            return this;
+        }
+    }
+
+    /**
+     * @return buffers of the calling thread
+     */
+    static RowBuffers rowBuffers() {
+        return ROW_BUFFERS.get();
+    }
+
+    /**
+     * @param zRe           real parts of the starting z per pixel, left holding the final z or
+     *                      {@link ResumableKernel#INSIDE} for pixels found periodic
+     * @param zIm           imaginary parts of the starting z per pixel, left holding the final z
+     * @param cRe           real parts of c per pixel
+     * @param cIm           imaginary parts of c per pixel
+     * @param length        number of pixels
+     * @param maxIterations max iterations
+     * @param epsilon       periodicity tolerance
+     * @param iterations    output iterations per pixel
+     */
+    public static void fractalIteration(double[] zRe, double[] zIm, double[] cRe, double[] cIm, int length, int maxIterations, double epsilon, int[] iterations) {
+        final double[] counts = new double[SPECIES.length()];
+        for (int k = 0; k < length; k += SPECIES.length()) {
+            VectorMask<Double> active = SPECIES.indexInRange(k, length);
+            DoubleVector vzRe = DoubleVector.fromArray(SPECIES, zRe, k, active);
+            DoubleVector vzIm = DoubleVector.fromArray(SPECIES, zIm, k, active);
+            final DoubleVector vcRe = DoubleVector.fromArray(SPECIES, cRe, k, active);
+            final DoubleVector vcIm = DoubleVector.fromArray(SPECIES, cIm, k, active);
+            VectorMask<Double> periodic = SPECIES.maskAll(false);
+            DoubleVector count = DoubleVector.zero(SPECIES);
+            DoubleVector savedRe = vzRe;
+            DoubleVector savedIm = vzIm;
+            for (int i = 0, saveAt = 1; i < maxIterations; ++i) {
+                final DoubleVector zReSq = vzRe.mul(vzRe);
+                final DoubleVector zImSq = vzIm.mul(vzIm);
+                active = active.andNot(zReSq.add(zImSq).compare(VectorOperators.GT, 4.0));
+                if (!active.anyTrue()) break;
+                // escaped lanes keep i as their count
+                count = count.add(1.0, active);
+                final DoubleVector t = vzRe.mul(vzIm);
+                vzRe = zReSq.sub(zImSq).add(vcRe);
+                vzIm = t.add(t).add(vcIm);
+
+                final VectorMask<Double> cycle = vzRe.sub(savedRe).abs().add(vzIm.sub(savedIm).abs())
+                        .compare(VectorOperators.LT, epsilon);
+                periodic = periodic.or(cycle.and(active));
+                active = active.andNot(cycle);
+                if (i + 1 == saveAt) {
+                    savedRe = vzRe;
+                    savedIm = vzIm;
+                    saveAt <<= 1;
+                }
+            }
+            // periodic lanes are inside
+            count = count.blend(maxIterations, periodic);
+            count.intoArray(counts, 0);
+            final VectorMask<Double> inRange = SPECIES.indexInRange(k, length);
+            vzRe.blend(ResumableKernel.INSIDE, periodic).intoArray(zRe, k, inRange);
+            vzIm.intoArray(zIm, k, inRange);
+            for (int lane = 0; lane < SPECIES.length() && k + lane < length; lane++) {
+                iterations[k + lane] = (int) counts[lane];
+            }
+        }
+    }
+
+    /**
+     * Single precision {@link #fractalIteration(double[], double[], double[], double[], int, int, double, int[])} for
+     * preview frames.
+     */
+    public static void fractalIteration(float[] zRe, float[] zIm, float[] cRe, float[] cIm, int length, int maxIterations, float epsilon, int[] iterations) {
+        final float[] counts = new float[FLOAT_SPECIES.length()];
+        for (int k = 0; k < length; k += FLOAT_SPECIES.length()) {
+            VectorMask<Float> active = FLOAT_SPECIES.indexInRange(k, length);
+            FloatVector vzRe = FloatVector.fromArray(FLOAT_SPECIES, zRe, k, active);
+            FloatVector vzIm = FloatVector.fromArray(FLOAT_SPECIES, zIm, k, active);
+            final FloatVector vcRe = FloatVector.fromArray(FLOAT_SPECIES, cRe, k, active);
+            final FloatVector vcIm = FloatVector.fromArray(FLOAT_SPECIES, cIm, k, active);
+            VectorMask<Float> periodic = FLOAT_SPECIES.maskAll(false);
+            FloatVector count = FloatVector.zero(FLOAT_SPECIES);
+            FloatVector savedRe = vzRe;
+            FloatVector savedIm = vzIm;
+            for (int i = 0, saveAt = 1; i < maxIterations; ++i) {
+                final FloatVector zReSq = vzRe.mul(vzRe);
+                final FloatVector zImSq = vzIm.mul(vzIm);
+                active = active.andNot(zReSq.add(zImSq).compare(VectorOperators.GT, 4.0f));
+                if (!active.anyTrue()) break;
+                // escaped lanes keep i as their count, exact in float up to 2^24 iterations
+                count = count.add(1.0f, active);
+                final FloatVector t = vzRe.mul(vzIm);
+                vzRe = zReSq.sub(zImSq).add(vcRe);
+                vzIm = t.add(t).add(vcIm);
+
+                final VectorMask<Float> cycle = vzRe.sub(savedRe).abs().add(vzIm.sub(savedIm).abs())
+                        .compare(VectorOperators.LT, epsilon);
+                periodic = periodic.or(cycle.and(active));
+                active = active.andNot(cycle);
+                if (i + 1 == saveAt) {
+                    savedRe = vzRe;
+                    savedIm = vzIm;
+                    saveAt <<= 1;
+                }
+            }
+            // periodic lanes are inside
+            count = count.blend(maxIterations, periodic);
+            count.intoArray(counts, 0);
+            for (int lane = 0; lane < FLOAT_SPECIES.length() && k + lane < length; lane++) {
+                iterations[k + lane] = (int) counts[lane];
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.kamenbrot.fractals.mandelbrot;
+
+import com.kamenbrot.fractals.DoubleDouble;
+import com.kamenbrot.state.MandelDoubleDoubleState;
+
+/**
+ * Double-double counterpart of {@link DoubleViewport}, the hi and lo parts of every coordinate are laid out as in
+ * {@link com.kamenbrot.fractals.ComplexMapping#mapComplex(int, DoubleDouble, DoubleDouble)}.
+ */
+public record DoubleDoubleViewport(double[] columns, double[] rows) {
+
+    public static DoubleDoubleViewport of(MandelDoubleDoubleState mandelState) {
+        return new DoubleDoubleViewport(mandelState.getRealCoordinates(), mandelState.getImaginaryCoordinates());
+    }
+
+    public DoubleDouble re(int x) {
+        return DoubleDouble.valueOf(columns[2 * x], columns[2 * x + 1]);
+    }
+
+    public DoubleDouble im(int y) {
+        return DoubleDouble.valueOf(rows[2 * y], rows[2 * y + 1]);
+    }
+}
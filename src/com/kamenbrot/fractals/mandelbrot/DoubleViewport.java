@@ -0,0 +1,30 @@
+package com.kamenbrot.fractals.mandelbrot;
+
+import com.kamenbrot.fractals.ComplexMapping;
+import com.kamenbrot.state.GenericMandelState;
+import com.kamenbrot.state.MandelDoubleState;
+
+/**
+ * Pixel to complex plane mapping of a view in doubles, a real coordinate per column and an imaginary one per row. The
+ * double state keeps its tables until the view changes, deeper states are mapped from their bounds in double for the
+ * formulas that have no kernel at their precision.
+ */
+public record DoubleViewport(double[] columns, double[] rows) {
+
+    public static DoubleViewport of(GenericMandelState<?> mandelState) {
+        if (mandelState instanceof MandelDoubleState s) {
+            return new DoubleViewport(s.getRealCoordinates(), s.getImaginaryCoordinates());
+        }
+        return new DoubleViewport(
+                ComplexMapping.mapComplex(mandelState.getMandelWidth(), mandelState.getMinX().doubleValue(), mandelState.getMaxX().doubleValue()),
+                ComplexMapping.mapComplex(mandelState.getMandelHeight(), mandelState.getMinY().doubleValue(), mandelState.getMaxY().doubleValue()));
+    }
+
+    public double re(int x) {
+        return columns[x];
+    }
+
+    public double im(int y) {
+        return rows[y];
+    }
+}
@@ -0,0 +1,99 @@
+package com.kamenbrot.fractals.mandelbrot;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Analytic test for points inside the main cardioid, the period-2 bulb and any other registered bulb of the Mandelbrot
+ * set. Such points never escape so they can be given max iterations without iterating them.
+ */
+public final class InteriorCheck {
+
+    /**
+     * Inscribed disc of a known bulb. Only discs that lie completely inside the set may be registered.
+     */
+    public record Bulb(double re, double im, double radius) {
+
+        boolean contains(double x, double y, double margin) {
+            final double dx = x - re;
+            final double dy = y - im;
+            final double r = radius - margin;
+            return r > 0 && dx * dx + dy * dy < r * r;
+        }
+    }
+
+    /**
+     * The period-2 bulb is exactly the disc of radius 1/4 around -1
+     */
+    public static final Bulb PERIOD_2 = new Bulb(-1.0, 0.0, 0.25);
+
+    private static final LongAdder SHORT_CIRCUITED = new LongAdder();
+    private static volatile Bulb[] bulbs = {PERIOD_2};
+
+    private InteriorCheck() {
+    }
+
+    /**
+     * @param re real part of c
+     * @param im imaginary part of c
+     * @return true if c is inside the main cardioid or a registered bulb
+     */
+    public static boolean isInside(double re, double im) {
+        return isInside(re, im, 0.0);
+    }
+
+    /**
+     * @param re     real part of c
+     * @param im     imaginary part of c
+     * @param margin distance from the boundary under which a point is not trusted to be inside, for coordinates that
+     *               were rounded down to double
+     * @return true if c is inside the main cardioid or a registered bulb
+     */
+    public static boolean isInside(double re, double im, double margin) {
+        if (inMainCardioid(re, im, margin)) {
+            SHORT_CIRCUITED.increment();
+            return true;
+        }
+        for (Bulb bulb : bulbs) {
+            if (bulb.contains(re, im, margin)) {
+                SHORT_CIRCUITED.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The cardioid is where f = q (q + x) - im^2 / 4 is negative, with x = re - 1/4 and q = x^2 + im^2. f is not a
+     * distance, so the margin is turned into a bound on it through the gradient: a point a distance d inside the boundary
+     * has f of about -d |grad f|. The gradient vanishes at the cusp, points within the margin of it are not trusted.
+     */
+    private static boolean inMainCardioid(double re, double im, double margin) {
+        final double x = re - 0.25;
+        final double imSq = im * im;
+        final double q = x * x + imSq;
+        final double f = q * (q + x) - 0.25 * imSq;
+        if (margin == 0.0) return f < 0.0;
+        if (q < margin * margin) return false;
+        final double dfdx = 4.0 * q * x + 2.0 * x * x + q;
+        final double dfdy = im * (4.0 * q + 2.0 * x - 0.5);
+        return f < -margin * Math.sqrt(dfdx * dfdx + dfdy * dfdy);
+    }
+
+    public static synchronized void addBulb(Bulb bulb) {
+        final Bulb[] newBulbs = Arrays.copyOf(bulbs, bulbs.length + 1);
+        newBulbs[bulbs.length] = bulb;
+        bulbs = newBulbs;
+    }
+
+    /**
+     * @return number of points found inside since the last reset
+     */
+    public static long getShortCircuited() {
+        return SHORT_CIRCUITED.sum();
+    }
+
+    public static void resetShortCircuited() {
+        SHORT_CIRCUITED.reset();
+    }
+}
@@ -0,0 +1,129 @@
+package com.kamenbrot.fractals.mandelbrot;
+
+import com.kamenbrot.fractals.DistanceKernel;
+import com.kamenbrot.fractals.DoubleDouble;
+import com.kamenbrot.fractals.FractalFormula;
+import com.kamenbrot.fractals.FractalKernel;
+import com.kamenbrot.fractals.ResumableKernel;
+import com.kamenbrot.state.GenericMandelState;
+import com.kamenbrot.state.MandelDoubleDoubleState;
+import com.kamenbrot.state.MandelDoubleState;
+import com.kamenbrot.state.MandelState;
+
+/**
+ * z = z^2 + c with the pixel as the starting z and a fixed c. Julia sets are not deep zoom targets, views beyond
+ * double-double are iterated on their double mapping.
+ *
+ * @param re   real part of c, a {@link DoubleDouble} for double-double states
+ * @param imag imaginary part of c
+ */
+public record JuliaFormula<T extends Number>(T re, T imag) implements FractalFormula {
+
+    @Override
+    public String getName() {
+        return "Julia";
+    }
+
+    @Override
+    public Symmetry getSymmetry() {
+        return Symmetry.POINT;
+    }
+
+    @Override
+    public boolean isFull() {
+        return true;
+    }
+
+    @Override
+    public FractalKernel kernel(MandelState mandelState) {
+        final int maxIterations = mandelState.getMaxIterations();
+        final double epsilon = CpuMandelbrot.periodicityTolerance(mandelState);
+        return switch (mandelState) {
+            case MandelDoubleState s -> new DoubleKernel(DoubleViewport.of(s), maxIterations, re.doubleValue(), imag.doubleValue(), epsilon);
+            case MandelDoubleDoubleState s -> {
+                final DoubleDoubleViewport viewport = DoubleDoubleViewport.of(s);
+                final DoubleDouble cRe = (DoubleDouble) re;
+                final DoubleDouble cIm = (DoubleDouble) imag;
+                yield (x, y) -> {
+                    final DoubleDouble real = viewport.re(x);
+                    final DoubleDouble imaginary = viewport.im(y);
+                    return CpuMandelbrot.fractalIteration(real.getHi(), real.getLo(), imaginary.getHi(), imaginary.getLo(), maxIterations,
+                            cRe.getHi(), cRe.getLo(), cIm.getHi(), cIm.getLo(), epsilon);
+                };
+            }
+            case GenericMandelState<?> s -> {
+                final DoubleViewport viewport = DoubleViewport.of(s);
+                final double cRe = re.doubleValue();
+                final double cIm = imag.doubleValue();
+                yield (x, y) -> CpuMandelbrot.fractalIteration(viewport.re(x), viewport.im(y), maxIterations, cRe, cIm, epsilon);
+            }
+            default -> throw new UnsupportedOperationException("State Not Implemented");
+        };
+    }
+
+    @Override
+    public boolean hasDistanceKernel(MandelState mandelState) {
+        return mandelState instanceof MandelDoubleState;
+    }
+
+    @Override
+    public DistanceKernel distanceKernel(MandelState mandelState) {
+        if (!(mandelState instanceof MandelDoubleState s)) return null;
+        final DoubleViewport viewport = DoubleViewport.of(s);
+        final int maxIterations = s.getMaxIterations();
+        final double pixelSpacing = s.getPixelSpacing();
+        final double cRe = re.doubleValue();
+        final double cIm = imag.doubleValue();
+        return (x, y) -> CpuMandelbrot.distanceEstimate(viewport.re(x), viewport.im(y), maxIterations, cRe, cIm, pixelSpacing, true);
+    }
+
+    private record DoubleKernel(DoubleViewport viewport, int maxIterations, double cRe, double cIm, double epsilon) implements ResumableKernel {
+
+        @Override
+        public int iterate(int x, int y) {
+            return CpuMandelbrot.fractalIteration(viewport.re(x), viewport.im(y), maxIterations, cRe, cIm, epsilon);
+        }
+
+        @Override
+        public int iterate(int x, int y, int iterations, double[] orbits, int index) {
+            if (iterations == 0) {
+                orbits[2 * index] = viewport.re(x);
+                orbits[2 * index + 1] = viewport.im(y);
+            }
+            return CpuMandelbrot.fractalIteration(orbits, index, iterations, maxIterations, cRe, cIm, epsilon);
+        }
+
+        @Override
+        public boolean iterateRow(int x, int y, int length, int[] iterations) {
+            return iterateRow(x, y, length, iterations, null);
+        }
+
+        /**
+         * Iterates the row segment with {@link CpuVectorMandelbrot}.
+         */
+        @Override
+        public boolean iterateRow(int x, int y, int length, int[] iterations, double[] orbits) {
+            if (!CpuMandelbrot.VECTOR_KERNEL) return false;
+            final CpuVectorMandelbrot.RowBuffers buffers = CpuVectorMandelbrot.rowBuffers().ofDouble(length);
+            final double[] zRe = buffers.zRe;
+            final double[] zIm = buffers.zIm;
+            final double[] cRes = buffers.cRe;
+            final double[] cIms = buffers.cIm;
+            final double imaginary = viewport.im(y);
+            for (int i = 0; i < length; i++) {
+                zRe[i] = viewport.re(x + i);
+                zIm[i] = imaginary;
+                cRes[i] = cRe;
+                cIms[i] = cIm;
+            }
+            CpuVectorMandelbrot.fractalIteration(zRe, zIm, cRes, cIms, length, maxIterations, epsilon, iterations);
+            if (orbits != null) {
+                for (int i = 0; i < length; i++) {
+                    orbits[2 * i] = zRe[i];
+                    orbits[2 * i + 1] = zIm[i];
+                }
+            }
+            return true;
+        }
+    }
+}
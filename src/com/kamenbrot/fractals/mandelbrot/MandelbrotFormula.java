@@ -0,0 +1,363 @@
+package com.kamenbrot.fractals.mandelbrot;
+
+import com.kamenbrot.fractals.DistanceKernel;
+import com.kamenbrot.fractals.DoubleDouble;
+import com.kamenbrot.fractals.FixedPoint;
+import com.kamenbrot.fractals.FloatExp;
+import com.kamenbrot.fractals.FractalFormula;
+import com.kamenbrot.fractals.FractalKernel;
+import com.kamenbrot.fractals.ResumableKernel;
+import com.kamenbrot.state.MandelDoubleDoubleState;
+import com.kamenbrot.state.MandelDoubleState;
+import com.kamenbrot.state.MandelFixedPointState;
+import com.kamenbrot.state.MandelFloatExpState;
+import com.kamenbrot.state.MandelPerturbationState;
+import com.kamenbrot.state.MandelState;
+import com.kamenbrot.state.PrecisionPolicy;
+
+/**
+ * z = z^2 + c with a kernel for every precision tier. Double-double views start their pixels from a
+ * {@link SeriesApproximation} when it skips anything and interactive double views are previewed in single precision.
+ */
+public final class MandelbrotFormula implements FractalFormula {
+
+    public static final MandelbrotFormula INSTANCE = new MandelbrotFormula();
+
+    private MandelbrotFormula() {
+    }
+
+    @Override
+    public String getName() {
+        return "Mandelbrot";
+    }
+
+    @Override
+    public Symmetry getSymmetry() {
+        return Symmetry.CONJUGATE;
+    }
+
+    @Override
+    public boolean isFull() {
+        return true;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public FractalKernel kernel(MandelState mandelState) {
+        return switch (mandelState) {
+            case MandelDoubleState s when s.isInteractive() && PrecisionPolicy.resolvesInFloat(s) -> new PreviewKernel(s);
+            case MandelDoubleState s -> new DoubleKernel(s);
+            case MandelDoubleDoubleState s -> {
+                final SeriesApproximation series = SeriesApproximation.of(s);
+                yield series.getSkip() > 0 ? new SeriesKernel(s, series) : new DoubleDoubleKernel(s);
+            }
+            case MandelPerturbationState s -> new PerturbationKernel(s);
+            case MandelFixedPointState s -> new FixedPointKernel(s);
+            case MandelFloatExpState s -> new FloatExpKernel(s);
+            default -> throw new UnsupportedOperationException("State Not Implemented");
+        };
+    }
+
+    @Override
+    public boolean hasDistanceKernel(MandelState mandelState) {
+        // only the double state resolves its pixels with the double derivative
+        return mandelState instanceof MandelDoubleState;
+    }
+
+    @Override
+    public DistanceKernel distanceKernel(MandelState mandelState) {
+        if (!(mandelState instanceof MandelDoubleState s)) return null;
+        final DoubleViewport viewport = DoubleViewport.of(s);
+        final int maxIterations = s.getMaxIterations();
+        final double pixelSpacing = s.getPixelSpacing();
+        return (x, y) -> {
+            final double real = viewport.re(x);
+            final double imaginary = viewport.im(y);
+            if (InteriorCheck.isInside(real, imaginary)) return 0.0;
+            return CpuMandelbrot.distanceEstimate(0.0d, 0.0d, maxIterations, real, imaginary, pixelSpacing, false);
+        };
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    private static final class DoubleKernel implements ResumableKernel {
+
+        private final DoubleViewport viewport;
+        private final int maxIterations;
+        private final double epsilon;
+
+        DoubleKernel(MandelDoubleState mandelState) {
+            this.viewport = DoubleViewport.of(mandelState);
+            this.maxIterations = mandelState.getMaxIterations();
+            this.epsilon = CpuMandelbrot.periodicityTolerance(mandelState);
+        }
+
+        @Override
+        public int iterate(int x, int y) {
+            final double real = viewport.re(x);
+            final double imaginary = viewport.im(y);
+            if (InteriorCheck.isInside(real, imaginary)) return maxIterations;
+            return CpuMandelbrot.fractalIteration(0.0d, 0.0d, maxIterations, real, imaginary, epsilon);
+        }
+
+        @Override
+        public int iterate(int x, int y, int iterations, double[] orbits, int index) {
+            final double real = viewport.re(x);
+            final double imaginary = viewport.im(y);
+            if (iterations == 0) {
+                if (InteriorCheck.isInside(real, imaginary)) {
+                    orbits[2 * index] = INSIDE;
+                    return maxIterations;
+                }
+                orbits[2 * index] = 0.0d;
+                orbits[2 * index + 1] = 0.0d;
+            }
+            return CpuMandelbrot.fractalIteration(orbits, index, iterations, maxIterations, real, imaginary, epsilon);
+        }
+
+        @Override
+        public boolean iterateRow(int x, int y, int length, int[] iterations) {
+            return iterateRow(x, y, length, iterations, null);
+        }
+
+        /**
+         * Iterates the row segment with {@link CpuVectorMandelbrot}.
+         */
+        @Override
+        public boolean iterateRow(int x, int y, int length, int[] iterations, double[] orbits) {
+            if (!CpuMandelbrot.VECTOR_KERNEL) return false;
+            final CpuVectorMandelbrot.RowBuffers buffers = CpuVectorMandelbrot.rowBuffers().ofDouble(length);
+            final double[] zRe = buffers.zRe;
+            final double[] zIm = buffers.zIm;
+            final double[] cRe = buffers.cRe;
+            final double[] cIm = buffers.cIm;
+            final double imaginary = viewport.im(y);
+            final boolean[] inside = buffers.inside;
+            int insideCount = 0;
+            for (int i = 0; i < length; i++) {
+                zRe[i] = 0.0d;
+                zIm[i] = 0.0d;
+                cRe[i] = viewport.re(x + i);
+                cIm[i] = imaginary;
+                if (inside[i] = InteriorCheck.isInside(cRe[i], imaginary)) {
+                    // escapes straight away instead of holding up the other lanes
+                    cRe[i] = CpuMandelbrot.ESCAPING_RE;
+                    insideCount++;
+                }
+            }
+            if (insideCount < length) {
+                CpuVectorMandelbrot.fractalIteration(zRe, zIm, cRe, cIm, length, maxIterations, epsilon, iterations);
+            }
+            for (int i = 0; i < length; i++) {
+                if (inside[i]) iterations[i] = maxIterations;
+                if (orbits != null) {
+                    orbits[2 * i] = inside[i] ? INSIDE : zRe[i];
+                    orbits[2 * i + 1] = zIm[i];
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Single precision version of {@link DoubleKernel} for interactive frames, the vector rows get twice the lanes.
+     */
+    private static final class PreviewKernel implements FractalKernel {
+
+        private final DoubleViewport viewport;
+        private final int maxIterations;
+        private final float epsilon;
+
+        PreviewKernel(MandelDoubleState mandelState) {
+            this.viewport = DoubleViewport.of(mandelState);
+            this.maxIterations = mandelState.getMaxIterations();
+            this.epsilon = (float) CpuMandelbrot.periodicityTolerance(mandelState);
+        }
+
+        @Override
+        public int iterate(int x, int y) {
+            final double real = viewport.re(x);
+            final double imaginary = viewport.im(y);
+            if (InteriorCheck.isInside(real, imaginary)) return maxIterations;
+            return CpuMandelbrot.fractalIteration(0.0f, 0.0f, maxIterations, (float) real, (float) imaginary, epsilon);
+        }
+
+        @Override
+        public boolean iterateRow(int x, int y, int length, int[] iterations) {
+            if (!CpuMandelbrot.VECTOR_KERNEL) return false;
+            final CpuVectorMandelbrot.RowBuffers buffers = CpuVectorMandelbrot.rowBuffers().ofFloat(length);
+            final float[] zRe = buffers.floatZRe;
+            final float[] zIm = buffers.floatZIm;
+            final float[] cRe = buffers.floatCRe;
+            final float[] cIm = buffers.floatCIm;
+            final double imaginary = viewport.im(y);
+            final boolean[] inside = buffers.inside;
+            int insideCount = 0;
+            for (int i = 0; i < length; i++) {
+                final double real = viewport.re(x + i);
+                zRe[i] = 0.0f;
+                zIm[i] = 0.0f;
+                cRe[i] = (float) real;
+                cIm[i] = (float) imaginary;
+                if (inside[i] = InteriorCheck.isInside(real, imaginary)) {
+                    cRe[i] = (float) CpuMandelbrot.ESCAPING_RE;
+                    insideCount++;
+                }
+            }
+            if (insideCount < length) {
+                CpuVectorMandelbrot.fractalIteration(zRe, zIm, cRe, cIm, length, maxIterations, epsilon, iterations);
+            }
+            for (int i = 0; i < length; i++) {
+                if (inside[i]) iterations[i] = maxIterations;
+            }
+            return true;
+        }
+    }
+
+    private static class DoubleDoubleKernel implements FractalKernel {
+
+        protected final DoubleDoubleViewport viewport;
+        protected final int maxIterations;
+        protected final double epsilon;
+
+        DoubleDoubleKernel(MandelDoubleDoubleState mandelState) {
+            this.viewport = DoubleDoubleViewport.of(mandelState);
+            this.maxIterations = mandelState.getMaxIterations();
+            this.epsilon = CpuMandelbrot.periodicityTolerance(mandelState);
+        }
+
+        @Override
+        public int iterate(int x, int y) {
+            final DoubleDouble real = viewport.re(x);
+            final DoubleDouble imaginary = viewport.im(y);
+            if (InteriorCheck.isInside(real.doubleValue(), imaginary.doubleValue(), CpuMandelbrot.INTERIOR_MARGIN)) {
+                return maxIterations;
+            }
+            return CpuMandelbrot.fractalIteration(0.0, 0.0, 0.0, 0.0, maxIterations,
+                    real.getHi(), real.getLo(), imaginary.getHi(), imaginary.getLo(), epsilon);
+        }
+    }
+
+    /**
+     * {@link DoubleDoubleKernel} starting from the z the series gives at its skip iteration instead of from zero.
+     */
+    private static final class SeriesKernel extends DoubleDoubleKernel {
+
+        private final SeriesApproximation series;
+
+        SeriesKernel(MandelDoubleDoubleState mandelState, SeriesApproximation series) {
+            super(mandelState);
+            this.series = series;
+        }
+
+        @Override
+        public int iterate(int x, int y) {
+            final DoubleDouble real = viewport.re(x);
+            final DoubleDouble imaginary = viewport.im(y);
+            if (InteriorCheck.isInside(real.doubleValue(), imaginary.doubleValue(), CpuMandelbrot.INTERIOR_MARGIN)) {
+                return maxIterations;
+            }
+            final double dcRe = real.sub(series.getCenterX()).doubleValue();
+            final double dcIm = imaginary.sub(series.getCenterY()).doubleValue();
+            final DoubleDouble zRe = series.getReferenceRe().add(DoubleDouble.valueOf(series.deltaRe(dcRe, dcIm)));
+            final DoubleDouble zIm = series.getReferenceIm().add(DoubleDouble.valueOf(series.deltaIm(dcRe, dcIm)));
+            return series.getSkip() + CpuMandelbrot.fractalIteration(zRe.getHi(), zRe.getLo(), zIm.getHi(), zIm.getLo(), maxIterations - series.getSkip(),
+                    real.getHi(), real.getLo(), imaginary.getHi(), imaginary.getLo(), epsilon);
+        }
+    }
+
+    private static final class PerturbationKernel implements FractalKernel {
+
+        private final double halfWidth;
+        private final double halfHeight;
+        private final double pixelSpacingX;
+        private final double pixelSpacingY;
+        private final int maxIterations;
+        private final ReferenceOrbit orbit;
+
+        PerturbationKernel(MandelPerturbationState mandelState) {
+            this.halfWidth = mandelState.getMandelWidth() * 0.5;
+            this.halfHeight = mandelState.getMandelHeight() * 0.5;
+            this.pixelSpacingX = mandelState.getPixelSpacingX();
+            this.pixelSpacingY = mandelState.getPixelSpacingY();
+            this.maxIterations = mandelState.getMaxIterations();
+            this.orbit = mandelState.getReferenceOrbit();
+        }
+
+        @Override
+        public int iterate(int x, int y) {
+            return CpuMandelbrot.perturbationIteration((x - halfWidth) * pixelSpacingX, (y - halfHeight) * pixelSpacingY, maxIterations, orbit);
+        }
+    }
+
+    private static final class FloatExpKernel implements FractalKernel {
+
+        private final double halfWidth;
+        private final double halfHeight;
+        private final FloatExp pixelSpacingX;
+        private final FloatExp pixelSpacingY;
+        private final int maxIterations;
+        private final ReferenceOrbit orbit;
+
+        FloatExpKernel(MandelFloatExpState mandelState) {
+            this.halfWidth = mandelState.getMandelWidth() * 0.5;
+            this.halfHeight = mandelState.getMandelHeight() * 0.5;
+            this.pixelSpacingX = mandelState.getPixelSpacingX();
+            this.pixelSpacingY = mandelState.getPixelSpacingY();
+            this.maxIterations = mandelState.getMaxIterations();
+            this.orbit = mandelState.getReferenceOrbit();
+        }
+
+        @Override
+        public int iterate(int x, int y) {
+            return CpuMandelbrot.perturbationIteration(pixelSpacingX.mul(x - halfWidth), pixelSpacingY.mul(y - halfHeight), maxIterations, orbit);
+        }
+    }
+
+    private static final class FixedPointKernel implements FractalKernel {
+
+        private final int width;
+        private final int height;
+        private final FixedPoint centerX;
+        private final FixedPoint centerY;
+        private final FixedPoint halfPixelSpacingX;
+        private final FixedPoint halfPixelSpacingY;
+        private final int maxIterations;
+        private final double epsilon;
+        private final ThreadLocal<CpuMandelbrot.FixedPointScratch> scratch;
+
+        FixedPointKernel(MandelFixedPointState mandelState) {
+            this.width = mandelState.getMandelWidth();
+            this.height = mandelState.getMandelHeight();
+            this.centerX = mandelState.getCenterX();
+            this.centerY = mandelState.getCenterY();
+            this.halfPixelSpacingX = mandelState.getHalfPixelSpacingX();
+            this.halfPixelSpacingY = mandelState.getHalfPixelSpacingY();
+            this.maxIterations = mandelState.getMaxIterations();
+            this.epsilon = CpuMandelbrot.periodicityTolerance(mandelState);
+            final int fractionLimbs = centerX.getFractionLimbs();
+            this.scratch = ThreadLocal.withInitial(() -> new CpuMandelbrot.FixedPointScratch(fractionLimbs));
+        }
+
+        @Override
+        public int iterate(int x, int y) {
+            final CpuMandelbrot.FixedPointScratch s = scratch.get();
+            // pixel offsets from the middle of the view in half pixels, like the half extents of the other tiers
+            final FixedPoint real = s.cRe.mul(halfPixelSpacingX, 2L * x - width);
+            final FixedPoint imaginary = s.cIm.mul(halfPixelSpacingY, 2L * y - height);
+            real.add(real, centerX);
+            imaginary.add(imaginary, centerY);
+            if (InteriorCheck.isInside(real.doubleValue(), imaginary.doubleValue(), CpuMandelbrot.INTERIOR_MARGIN)) {
+                return maxIterations;
+            }
+            return CpuMandelbrot.fractalIteration(real, imaginary, maxIterations, epsilon, s);
+        }
+    }
+}
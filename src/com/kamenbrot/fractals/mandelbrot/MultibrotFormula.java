@@ -0,0 +1,130 @@
+package com.kamenbrot.fractals.mandelbrot;
+
+import com.kamenbrot.fractals.DoubleDouble;
+import com.kamenbrot.fractals.FractalFormula;
+import com.kamenbrot.fractals.FractalKernel;
+import com.kamenbrot.state.GenericMandelState;
+import com.kamenbrot.state.MandelDoubleDoubleState;
+import com.kamenbrot.state.MandelState;
+
+/**
+ * z = z^n + c for an integer power n above 2, z^n is multiplied out one power at a time. Iterated natively in double
+ * and double-double, deeper views are iterated on their double mapping.
+ *
+ * @param power power of z, at least 3
+ */
+public record MultibrotFormula(int power) implements FractalFormula {
+
+    public MultibrotFormula {
+        if (power < 3) throw new IllegalArgumentException("Power must be at least 3, z^2 is MandelbrotFormula");
+    }
+
+    @Override
+    public String getName() {
+        return "Multibrot z^" + power;
+    }
+
+    @Override
+    public Symmetry getSymmetry() {
+        return Symmetry.CONJUGATE;
+    }
+
+    @Override
+    public boolean isFull() {
+        return true;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public FractalKernel kernel(MandelState mandelState) {
+        final int power = this.power;
+        final int maxIterations = mandelState.getMaxIterations();
+        final double epsilon = CpuMandelbrot.periodicityTolerance(mandelState);
+        return switch (mandelState) {
+            case MandelDoubleDoubleState s -> {
+                final DoubleDoubleViewport viewport = DoubleDoubleViewport.of(s);
+                yield (x, y) -> fractalIteration(viewport.re(x), viewport.im(y), power, maxIterations, epsilon);
+            }
+            case GenericMandelState<?> s -> {
+                final DoubleViewport viewport = DoubleViewport.of(s);
+                yield (x, y) -> fractalIteration(viewport.re(x), viewport.im(y), power, maxIterations, epsilon);
+            }
+            default -> throw new UnsupportedOperationException("State Not Implemented");
+        };
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    /**
+     * Escape time iteration from z = 0 with the same cycle detection as
+     * {@link CpuMandelbrot#fractalIteration(double, double, int, double, double, double)}.
+     */
+    static int fractalIteration(double cRe, double cIm, int power, int maxIterations, double epsilon) {
+        double zRe = 0.0;
+        double zIm = 0.0;
+        double savedRe = zRe;
+        double savedIm = zIm;
+        int saveAt = 1;
+        for (int i = 0; i < maxIterations; ++i) {
+            if (zRe * zRe + zIm * zIm > 4) return i;
+            double pRe = zRe;
+            double pIm = zIm;
+            for (int p = 1; p < power; p++) {
+                final double t = pRe * zRe - pIm * zIm;
+                pIm = pRe * zIm + pIm * zRe;
+                pRe = t;
+            }
+            zRe = pRe + cRe;
+            zIm = pIm + cIm;
+            if (Math.abs(zRe - savedRe) + Math.abs(zIm - savedIm) < epsilon) {
+                return maxIterations;
+            }
+            if (i + 1 == saveAt) {
+                savedRe = zRe;
+                savedIm = zIm;
+                saveAt <<= 1;
+            }
+        }
+        return maxIterations;
+    }
+
+    /**
+     * Double-double version of {@link #fractalIteration(double, double, int, int, double)}
+     */
+    static int fractalIteration(DoubleDouble cRe, DoubleDouble cIm, int power, int maxIterations, double epsilon) {
+        DoubleDouble zRe = DoubleDouble.ZERO;
+        DoubleDouble zIm = DoubleDouble.ZERO;
+        DoubleDouble savedRe = zRe;
+        DoubleDouble savedIm = zIm;
+        int saveAt = 1;
+        for (int i = 0; i < maxIterations; ++i) {
+            if (zRe.sqr().addGreaterThanFour(zIm.sqr())) return i;
+            DoubleDouble pRe = zRe;
+            DoubleDouble pIm = zIm;
+            for (int p = 1; p < power; p++) {
+                final DoubleDouble t = pRe.mul(zRe).sub(pIm.mul(zIm));
+                pIm = pRe.mul(zIm).add(pIm.mul(zRe));
+                pRe = t;
+            }
+            zRe = pRe.add(cRe);
+            zIm = pIm.add(cIm);
+            if (DoubleDouble.epsilonGreaterThanDifference(zRe.getHi(), zRe.getLo(), savedRe.getHi(), savedRe.getLo(), epsilon) &&
+                    DoubleDouble.epsilonGreaterThanDifference(zIm.getHi(), zIm.getLo(), savedIm.getHi(), savedIm.getLo(), epsilon)) {
+                return maxIterations;
+            }
+            if (i + 1 == saveAt) {
+                savedRe = zRe;
+                savedIm = zIm;
+                saveAt <<= 1;
+            }
+        }
+        return maxIterations;
+    }
+}
@@ -0,0 +1,37 @@
+package com.kamenbrot.fractals.mandelbrot;
+
+/**
+ * Orbit of a single reference point computed at arbitrary precision and rounded to {@code double}. Pixels near the
+ * reference only iterate their {@code double} delta from it, see {@link CpuMandelbrot#perturbationIteration}.
+ */
+public final class ReferenceOrbit {
+
+    private final double[] re;
+    private final double[] im;
+    private final int length;
+
+    ReferenceOrbit(double[] re, double[] im, int length) {
+        this.re = re;
+        this.im = im;
+        this.length = length;
+    }
+
+    public double re(int n) {
+        return re[n];
+    }
+
+    public double im(int n) {
+        return im[n];
+    }
+
+    /**
+     * @return index of the last stored iteration, either the escape iteration of the reference or the max iterations
+     */
+    public int lastIteration() {
+        return length - 1;
+    }
+
+    public int length() {
+        return length;
+    }
+}
@@ -0,0 +1,210 @@
+package com.kamenbrot.fractals.mandelbrot;
+
+import com.kamenbrot.fractals.DoubleDouble;
+import com.kamenbrot.state.MandelDoubleDoubleState;
+
+import java.util.Arrays;
+
+/**
+ * Series approximation of the first iterations of every pixel in a view. The view centre is iterated once as the
+ * reference Z and a pixel at delta d from it follows z = Z + A d + B d^2 + C d^3 with
+ * <pre>
+ *     A' = 2ZA + 1,  B' = 2ZB + A^2,  C' = 2ZC + 2AB
+ * </pre>
+ * for as long as the truncated terms stay negligible. Pixels then start iterating at {@link #getSkip()} from the
+ * approximated z instead of from zero.
+ * <p>
+ * The skip is checked against probe points on the border of the view that are iterated in full. Both the series error
+ * and z itself are analytic in d, so their largest values over the view are on its border, the skip ends as soon as
+ * any probe strays from the series by more than {@link #TOLERANCE} of a pixel or gets close to escaping.
+ */
+public final class SeriesApproximation {
+
+    /**
+     * Largest series error allowed at a probe, in pixels after mapping the error back through A
+     */
+    private static final double TOLERANCE = 1e-3;
+    private static final int PROBES_PER_EDGE = 4;
+    /**
+     * Probes have to stay this far inside the escape radius, squared
+     */
+    private static final double ESCAPE_MARGIN = 3.0;
+
+    private final int skip;
+    private final DoubleDouble referenceRe;
+    private final DoubleDouble referenceIm;
+    private final double firstRe;
+    private final double firstIm;
+    private final double secondRe;
+    private final double secondIm;
+    private final double thirdRe;
+    private final double thirdIm;
+    private final DoubleDouble centerX;
+    private final DoubleDouble centerY;
+
+    private SeriesApproximation(int skip, DoubleDouble referenceRe, DoubleDouble referenceIm,
+                                double firstRe, double firstIm, double secondRe, double secondIm, double thirdRe, double thirdIm,
+                                DoubleDouble centerX, DoubleDouble centerY) {
+        this.skip = skip;
+        this.referenceRe = referenceRe;
+        this.referenceIm = referenceIm;
+        this.firstRe = firstRe;
+        this.firstIm = firstIm;
+        this.secondRe = secondRe;
+        this.secondIm = secondIm;
+        this.thirdRe = thirdRe;
+        this.thirdIm = thirdIm;
+        this.centerX = centerX;
+        this.centerY = centerY;
+    }
+
+    /**
+     * @param mandelState view to approximate
+     * @return the approximation with the largest skip the probes allow, the skip is zero if none
+     */
+    public static SeriesApproximation of(MandelDoubleDoubleState mandelState) {
+        final DoubleDouble centerX = mandelState.getCenterX();
+        final DoubleDouble centerY = mandelState.getCenterY();
+        final int width = mandelState.getMandelWidth();
+        final int height = mandelState.getMandelHeight();
+        final DoubleDoubleViewport viewport = DoubleDoubleViewport.of(mandelState);
+        final double pixelSpacing = mandelState.getPixelSpacing();
+
+        // probes along the border, as deltas from the centre and their own c
+        final int probes = 4 * PROBES_PER_EDGE;
+        final double[] deltaRe = new double[probes];
+        final double[] deltaIm = new double[probes];
+        final DoubleDouble[] probeCRe = new DoubleDouble[probes];
+        final DoubleDouble[] probeCIm = new DoubleDouble[probes];
+        for (int p = 0; p < probes; p++) {
+            final int edge = p / PROBES_PER_EDGE;
+            final int step = p % PROBES_PER_EDGE;
+            final int x = switch (edge) {
+                case 0 -> step * (width - 1) / PROBES_PER_EDGE;
+                case 1 -> width - 1;
+                case 2 -> (PROBES_PER_EDGE - step) * (width - 1) / PROBES_PER_EDGE;
+                default -> 0;
+            };
+            final int y = switch (edge) {
+                case 0 -> 0;
+                case 1 -> step * (height - 1) / PROBES_PER_EDGE;
+                case 2 -> height - 1;
+                default -> (PROBES_PER_EDGE - step) * (height - 1) / PROBES_PER_EDGE;
+            };
+            probeCRe[p] = viewport.re(x);
+            probeCIm[p] = viewport.im(y);
+            deltaRe[p] = probeCRe[p].sub(centerX).doubleValue();
+            deltaIm[p] = probeCIm[p].sub(centerY).doubleValue();
+        }
+        final DoubleDouble[] probeZRe = new DoubleDouble[probes];
+        final DoubleDouble[] probeZIm = new DoubleDouble[probes];
+        Arrays.fill(probeZRe, DoubleDouble.ZERO);
+        Arrays.fill(probeZIm, DoubleDouble.ZERO);
+
+        DoubleDouble zRe = DoubleDouble.ZERO;
+        DoubleDouble zIm = DoubleDouble.ZERO;
+        double aRe = 0.0, aIm = 0.0, bRe = 0.0, bIm = 0.0, cRe = 0.0, cIm = 0.0;
+        SeriesApproximation valid = new SeriesApproximation(0, DoubleDouble.ZERO, DoubleDouble.ZERO, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, centerX, centerY);
+        for (int n = 1; n < mandelState.getMaxIterations(); n++) {
+            // coefficients of iteration n from Z of iteration n - 1
+            final double zr = zRe.doubleValue();
+            final double zi = zIm.doubleValue();
+            final double newARe = 2 * (zr * aRe - zi * aIm) + 1;
+            final double newAIm = 2 * (zr * aIm + zi * aRe);
+            final double newBRe = 2 * (zr * bRe - zi * bIm) + aRe * aRe - aIm * aIm;
+            final double newBIm = 2 * (zr * bIm + zi * bRe) + 2 * aRe * aIm;
+            final double newCRe = 2 * (zr * cRe - zi * cIm) + 2 * (aRe * bRe - aIm * bIm);
+            final double newCIm = 2 * (zr * cIm + zi * cRe) + 2 * (aRe * bIm + aIm * bRe);
+            aRe = newARe;
+            aIm = newAIm;
+            bRe = newBRe;
+            bIm = newBIm;
+            cRe = newCRe;
+            cIm = newCIm;
+
+            final DoubleDouble newZRe = zRe.sqr().sub(zIm.sqr()).add(centerX);
+            zIm = zRe.mul(zIm).mul(DoubleDouble.TWO).add(centerY);
+            zRe = newZRe;
+            if (zRe.sqr().add(zIm.sqr()).doubleValue() > ESCAPE_MARGIN) break;
+
+            final double allowed = TOLERANCE * pixelSpacing * Math.hypot(aRe, aIm);
+            boolean accurate = true;
+            for (int p = 0; p < probes && accurate; p++) {
+                final DoubleDouble pRe = probeZRe[p];
+                final DoubleDouble pIm = probeZIm[p];
+                probeZRe[p] = pRe.sqr().sub(pIm.sqr()).add(probeCRe[p]);
+                probeZIm[p] = pRe.mul(pIm).mul(DoubleDouble.TWO).add(probeCIm[p]);
+                if (probeZRe[p].sqr().add(probeZIm[p].sqr()).doubleValue() > ESCAPE_MARGIN) {
+                    accurate = false;
+                    break;
+                }
+                final double dRe = deltaRe[p];
+                final double dIm = deltaIm[p];
+                // A d + B d^2 + C d^3 = d (A + d (B + d C))
+                final double hRe = bRe + (dRe * cRe - dIm * cIm);
+                final double hIm = bIm + (dRe * cIm + dIm * cRe);
+                final double gRe = aRe + (dRe * hRe - dIm * hIm);
+                final double gIm = aIm + (dRe * hIm + dIm * hRe);
+                final double seriesRe = dRe * gRe - dIm * gIm;
+                final double seriesIm = dRe * gIm + dIm * gRe;
+                final double errorRe = probeZRe[p].sub(zRe).doubleValue() - seriesRe;
+                final double errorIm = probeZIm[p].sub(zIm).doubleValue() - seriesIm;
+                accurate = Math.hypot(errorRe, errorIm) <= allowed;
+            }
+            if (!accurate) break;
+            valid = new SeriesApproximation(n, zRe, zIm, aRe, aIm, bRe, bIm, cRe, cIm, centerX, centerY);
+        }
+        return valid;
+    }
+
+    /**
+     * @return iteration the approximated z belongs to, zero if the series is of no use
+     */
+    public int getSkip() {
+        return skip;
+    }
+
+    /**
+     * @return real part of the reference z at the skip iteration
+     */
+    public DoubleDouble getReferenceRe() {
+        return referenceRe;
+    }
+
+    /**
+     * @return imaginary part of the reference z at the skip iteration
+     */
+    public DoubleDouble getReferenceIm() {
+        return referenceIm;
+    }
+
+    public DoubleDouble getCenterX() {
+        return centerX;
+    }
+
+    public DoubleDouble getCenterY() {
+        return centerY;
+    }
+
+    /**
+     * @return real part of A d + B d^2 + C d^3
+     */
+    public double deltaRe(double dRe, double dIm) {
+        final double hRe = secondRe + (dRe * thirdRe - dIm * thirdIm);
+        final double hIm = secondIm + (dRe * thirdIm + dIm * thirdRe);
+        final double gRe = firstRe + (dRe * hRe - dIm * hIm);
+        final double gIm = firstIm + (dRe * hIm + dIm * hRe);
+        return dRe * gRe - dIm * gIm;
+    }
+
+    /**
+     * @return imaginary part of A d + B d^2 + C d^3
+     */
+    public double deltaIm(double dRe, double dIm) {
+        final double hRe = secondRe + (dRe * thirdRe - dIm * thirdIm);
+        final double hIm = secondIm + (dRe * thirdIm + dIm * thirdRe);
+        final double gRe = firstRe + (dRe * hRe - dIm * hIm);
+        final double gIm = firstIm + (dRe * hIm + dIm * hRe);
+        return dRe * gIm + dIm * gRe;
+    }
+}
@@ -1,13 +1,33 @@
 package com.kamenbrot.generators;
 
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class BlockImageGeneratorAbstract implements ImageGenerator {
 
+    /**
+     * Blocks estimated to cost more than this fraction of what one worker does in a frame are split into cells
+     */
+    private static final double SPLIT_SHARE = 0.125;
+    /**
+     * Cells along each side of a split block
+     */
+    private static final int CELLS_PER_SIDE = 4;
+
     private final ForkJoinPool pool;
     private int blockSize;
+    /**
+     * Bumped by {@link #cancel()}, the blocks of a frame drop out once it moved past the generation the frame started at
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile int frameGeneration;
+    private volatile boolean complete;
 
     protected BlockImageGeneratorAbstract(BlockImageGeneratorAbstract imageGenerator) {
         this(imageGenerator.getPool(), imageGenerator.getBlockSize());
@@ -18,9 +38,49 @@ public abstract class BlockImageGeneratorAbstract implements ImageGenerator {
         this.blockSize = blockSize;
     }
 
-    protected abstract void generateBlock(int x, int y);
+    /**
+     * Generates the square of the given size at (x, y), parts of it outside the generated rows are left out
+     */
+    protected abstract void generateBlock(int x, int y, int size);
     protected abstract void beforeGenerate();
 
+    /**
+     * Estimates what the cells of the frame cost to generate. Cell (column, row) is the square of cellSize pixels at
+     * (column * cellSize, {@link #getRowStart()} + row * cellSize). Generators that would generate a block split into
+     * cells differently from the whole block give no estimate.
+     *
+     * @return cost per cell in rows of cells, null if there is no estimate
+     */
+    protected long[] estimateCosts(int cellSize, int columns, int rows) {
+        return null;
+    }
+
+    /**
+     * Called once every block is generated, for filling in what the blocks left out
+     */
+    protected void afterGenerate() {
+    }
+
+    /**
+     * Called instead of {@link #afterGenerate()} if the frame was cancelled, the blocks it left are partially generated
+     */
+    protected void afterCancel() {
+    }
+
+    /**
+     * @return first row of the image the blocks are generated from
+     */
+    protected int getRowStart() {
+        return 0;
+    }
+
+    /**
+     * @return row after the last one the blocks are generated for
+     */
+    protected int getRowEnd() {
+        return getImage().getHeight();
+    }
+
     protected void setBlockSize(int blockSize) {
         this.blockSize = blockSize;
     }
@@ -31,19 +91,129 @@ public abstract class BlockImageGeneratorAbstract implements ImageGenerator {
 
     @Override
     public void generateImage() {
+        frameGeneration = generation.get();
+        complete = false;
         beforeGenerate();
+        final List<Runnable> blocks = new ArrayList<>();
+        for (Block block : scheduleBlocks()) {
+            blocks.add(() -> {
+                if (!isCancelled()) generateBlock(block.x(), block.y(), block.size());
+            });
+        }
+        if (!isCancelled()) invokeInOrder(blocks);
+        if (!isCancelled()) afterGenerate();
+        complete = !isCancelled();
+        if (!complete) afterCancel();
+    }
+
+    /**
+     * Orders the blocks of the frame so that no single block is left running long after the others. Blocks estimated
+     * to cost more than {@link #SPLIT_SHARE} of a worker's share of the frame are split into cells that start first,
+     * most expensive first. The remaining blocks follow from the centre of the image outward, where the view was
+     * zoomed towards.
+     */
+    private List<Block> scheduleBlocks() {
         final BufferedImage image = getImage();
-        for (int x = 0; x < image.getWidth(); x += blockSize) {
-            for (int y = 0; y < image.getHeight(); y += blockSize) {
-                final int X = x, Y = y;
-                pool.execute(() -> generateBlock(X, Y));
+        final int width = image.getWidth();
+        final int rowStart = getRowStart();
+        final int rowEnd = getRowEnd();
+        final int columns = (width + blockSize - 1) / blockSize;
+        final int rows = (rowEnd - rowStart + blockSize - 1) / blockSize;
+        final int cellSize = blockSize / CELLS_PER_SIDE;
+        final long[] cellCosts = cellSize > 0 && columns * rows > 1 ? estimateCosts(cellSize, columns * CELLS_PER_SIDE, rows * CELLS_PER_SIDE) : null;
+        final List<Block> split = new ArrayList<>();
+        final List<Block> whole = new ArrayList<>();
+        final long[] costs = new long[columns * rows];
+        long total = 0;
+        if (cellCosts != null) {
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    for (int k = 0; k < CELLS_PER_SIDE * CELLS_PER_SIDE; k++) {
+                        costs[column + columns * row] += cellCosts[column * CELLS_PER_SIDE + k % CELLS_PER_SIDE + columns * CELLS_PER_SIDE * (row * CELLS_PER_SIDE + k / CELLS_PER_SIDE)];
+                    }
+                    total += costs[column + columns * row];
+                }
+            }
+        }
+        final double splitCost = total * SPLIT_SHARE / pool.getParallelism();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                final int x = column * blockSize;
+                final int y = rowStart + row * blockSize;
+                if (cellCosts == null || costs[column + columns * row] <= splitCost) {
+                    whole.add(new Block(x, y, blockSize, 0));
+                    continue;
+                }
+                for (int k = 0; k < CELLS_PER_SIDE * CELLS_PER_SIDE; k++) {
+                    final int cx = x + k % CELLS_PER_SIDE * cellSize;
+                    final int cy = y + k / CELLS_PER_SIDE * cellSize;
+                    if (cx >= width || cy >= rowEnd) continue;
+                    split.add(new Block(cx, cy, cellSize, cellCosts[cx / cellSize + columns * CELLS_PER_SIDE * ((cy - rowStart) / cellSize)]));
+                }
             }
         }
-        while (!pool.awaitQuiescence(10, TimeUnit.SECONDS)) ;
+        split.sort(Comparator.comparingLong(Block::cost).reversed());
+        final double centreX = width / 2.0;
+        final double centreY = image.getHeight() / 2.0;
+        whole.sort(Comparator.comparingDouble(block -> Math.hypot(block.x() + blockSize / 2.0 - centreX, block.y() + blockSize / 2.0 - centreY)));
+        split.addAll(whole);
+        return split;
+    }
+
+    /**
+     * Runs the tasks on every worker of the pool, each worker taking the next task in the list until none are left, so
+     * the tasks start in the order of the list whatever order the pool runs forked tasks in.
+     */
+    protected void invokeInOrder(List<Runnable> tasks) {
+        final AtomicInteger next = new AtomicInteger();
+        final List<Runnable> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(pool.getParallelism(), tasks.size()); i++) {
+            workers.add(() -> {
+                for (int k; (k = next.getAndIncrement()) < tasks.size(); ) {
+                    tasks.get(k).run();
+                }
+            });
+        }
+        invokeAll(workers);
+    }
+
+    /**
+     * Runs the tasks on the pool and waits for them only, unlike waiting for the pool to go quiet this does not wait on
+     * the frames of other generators sharing it.
+     */
+    protected void invokeAll(List<Runnable> tasks) {
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks.stream().map(ForkJoinTask::adapt).toList());
+            }
+        });
+    }
+
+    @Override
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return whether the frame being generated was cancelled, its blocks should return as soon as they see it
+     */
+    protected boolean isCancelled() {
+        return generation.get() != frameGeneration;
     }
 
     protected int getBlockSize() {
         return blockSize;
     }
 
+    /**
+     * Square of the image generated as one task
+     */
+    private record Block(int x, int y, int size, long cost) {
+    }
 }
@@ -7,4 +7,15 @@ public interface ImageGenerator {
     BufferedImage getImage();
     void generateImage();
     void resizeImage(int width, int height);
+
+    /**
+     * Makes the frame being generated drop the blocks it has not generated yet, what it generated so far stays in the
+     * image. Frames started afterward are generated in full.
+     */
+    void cancel();
+
+    /**
+     * @return whether the last frame was generated in full, false if it was cancelled
+     */
+    boolean isComplete();
 }
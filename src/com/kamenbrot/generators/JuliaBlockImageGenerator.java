@@ -1,6 +1,7 @@
 package com.kamenbrot.generators;
 
-import com.kamenbrot.fractals.mandelbrot.CpuJulia;
+import com.kamenbrot.fractals.FractalFormula;
+import com.kamenbrot.fractals.mandelbrot.JuliaFormula;
 import com.kamenbrot.state.ColourState;
 import com.kamenbrot.state.GenericMandelState;
 import com.kamenbrot.state.MandelState;
@@ -36,10 +37,9 @@ public class JuliaBlockImageGenerator<T extends Number> extends MandelbrotBlockI
     this.imag = imag;
   }
 
-
   @Override
-  protected int mandelbrotAt(int x, int y) {
-    return CpuJulia.juliaAt(x, y, getMandelState(), re, imag);
+  protected FractalFormula getFormula() {
+    return new JuliaFormula<>(re, imag);
   }
 
   public void setPos(T re, T imag) {
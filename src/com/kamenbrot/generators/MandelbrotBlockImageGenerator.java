@@ -1,23 +1,116 @@
 package com.kamenbrot.generators;
 
+import com.kamenbrot.fractals.DistanceKernel;
+import com.kamenbrot.fractals.FractalFormula;
+import com.kamenbrot.fractals.FractalKernel;
+import com.kamenbrot.fractals.ResumableKernel;
 import com.kamenbrot.fractals.mandelbrot.CpuMandelbrot;
+import com.kamenbrot.fractals.mandelbrot.DoubleViewport;
 import com.kamenbrot.state.ColourState;
+import com.kamenbrot.state.GenericMandelState;
+import com.kamenbrot.state.MandelDoubleDoubleState;
+import com.kamenbrot.state.MandelDoubleState;
 import com.kamenbrot.state.MandelState;
 import com.kamenbrot.state.PanelState;
+import com.kamenbrot.state.PrecisionPolicy;
 
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.Executors;
+import java.util.List;
 import java.util.concurrent.ForkJoinPool;
 
 public class MandelbrotBlockImageGenerator extends BlockImageGeneratorAbstract {
 
+    /**
+     * Fraction of a pixel by which an axis of symmetry may miss the pixel grid and still be mirrored across
+     */
+    private static final double MIRROR_TOLERANCE = 1e-6;
+    /**
+     * Pixels of the predicted interior boundary iterated per task
+     */
+    private static final int BOUNDARY_CHUNK = 64;
+    /**
+     * Marks a pixel of the predicted interior boundary already queued for iterating
+     */
+    private static final int QUEUED = -2;
+
     private MandelState mandelState;
     private PanelState panelState;
     private int[] mandelCache;
     private BufferedImage image;
     private ColourState colourState;
+    /**
+     * Kernel of the frame being generated, resolved once so the pixels do not look up their formula and tier
+     */
+    private FractalKernel kernel;
+    /**
+     * Kernel per tile of {@link #getBlockSize()} pixels in rows of tiles if the tiles of the frame are iterated in
+     * different tiers, null if every pixel goes through {@link #kernel}
+     */
+    private FractalKernel[] tileKernels;
+    /**
+     * Distance kernel of the frame being generated, null unless it is shaded by distance
+     */
+    private DistanceKernel distanceKernel;
+    /**
+     * Twice the row of the real axis if the frame is mirrored across it or -1, see {@link #mirrorAxis}
+     */
+    private int mirrorRow;
+    /**
+     * Twice the column of the imaginary axis if the frame is mirrored through the origin or -1
+     */
+    private int mirrorColumn;
+    /**
+     * Rows [rowStart, rowEnd) are generated, the others are mirrored from them
+     */
+    private int rowStart;
+    private int rowEnd;
+    /**
+     * Whether the frame being generated is shaded by distance estimation, cached values are then distance shades
+     */
+    private boolean distance;
+    /**
+     * Kernel of the frame if it keeps its pixels left at max iterations resumable, null otherwise
+     */
+    private ResumableKernel resumableKernel;
+    /**
+     * z of every pixel of the last frame as laid out by {@link ResumableKernel}, NaN for pixels that were filled in
+     * instead of iterated
+     */
+    private double[] orbits;
+    /**
+     * Max iterations a frame is deepened from while its pixels are resumed, 0 while generating a new frame
+     */
+    private int resumeFrom;
+    /**
+     * View of the last frame, null if it has been resized since
+     */
+    private Frame frame;
+    /**
+     * Pixels of the frame being generated that were predicted interior from the last frame and left inside an enclosure
+     * of verified interior pixels, null unless predicted
+     */
+    private boolean[] predicted;
+    /**
+     * Coordinates and iterations the last frame was generated with, null if it cannot be shifted
+     */
+    private Grid grid;
+    /**
+     * Whether the view was panned since the last frame, only then is the next frame shifted from it
+     */
+    private boolean panned;
+    /**
+     * Whole pixels the state panned the view by since the last frame
+     */
+    private int panX;
+    private int panY;
+    /**
+     * Whether the frame being generated was shifted from the last one, its cached pixels are painted already
+     */
+    private boolean shifted;
 
     public MandelbrotBlockImageGenerator(MandelState mandelState, PanelState panelState, ForkJoinPool pool, ColourState colourState) {
         this(mandelState, panelState, pool, panelState.getBlockSize(), new int[mandelState.getMandelWidth() * mandelState.getMandelHeight()], new BufferedImage(mandelState.getMandelWidth(), mandelState.getMandelHeight(), BufferedImage.TYPE_INT_RGB), colourState);
@@ -27,8 +120,11 @@ public class MandelbrotBlockImageGenerator extends BlockImageGeneratorAbstract {
         this(mandelState, panelState, other.getPool(), other.getBlockSize(), other.mandelCache, other.image, colourState);
     }
 
+    /**
+     * Generator drawing into the image of the other one, on its pool.
+     */
     public MandelbrotBlockImageGenerator(ImageGenerator imageGenerator, MandelState mandelState, PanelState panelState, ColourState colourState) {
-        this(mandelState, panelState, (ForkJoinPool) Executors.newWorkStealingPool(), panelState.getBlockSize(), new int[mandelState.getMandelWidth() * mandelState.getMandelHeight()], imageGenerator.getImage(), colourState);
+        this(mandelState, panelState, poolOf(imageGenerator), panelState.getBlockSize(), new int[mandelState.getMandelWidth() * mandelState.getMandelHeight()], imageGenerator.getImage(), colourState);
     }
 
     public MandelbrotBlockImageGenerator(MandelState mandelState, PanelState panelState, ForkJoinPool pool, int blockSize, int[] mandelCache, BufferedImage image, ColourState colourState) {
@@ -40,18 +136,505 @@ public class MandelbrotBlockImageGenerator extends BlockImageGeneratorAbstract {
         this.colourState = colourState;
     }
 
+    private static ForkJoinPool poolOf(ImageGenerator imageGenerator) {
+        return imageGenerator instanceof BlockImageGeneratorAbstract generator
+                ? generator.getPool()
+                : RenderScheduler.shared().pool(RenderScheduler.Priority.FOREGROUND);
+    }
+
     @Override
     protected void beforeGenerate() {
+        // a deepened frame keeps its cache, orbits and symmetry
+        if (resumeFrom > 0) return;
+        final Frame previous = frame;
+        final Grid previousGrid = grid;
+        final boolean previousDistance = distance;
+        final FractalFormula formula = resolveKernels();
+        findSymmetry(formula.getSymmetry());
+        frame = Frame.of(mandelState, formula);
+        grid = Grid.of(mandelState, distance, resumableKernel != null);
+        shifted = panned && previous != null && previous.formula().equals(frame.formula()) && shiftFrom(previousGrid);
+        panned = false;
+        panX = 0;
+        panY = 0;
+        if (shifted) {
+            predicted = null;
+            return;
+        }
+        // the cache of the last frame is read before it is reset
+        predicted = mandelState.isPredictionToggled() && formula.isFull() && !distance && !previousDistance ? predictInterior(previous) : null;
         // reset cache
         Arrays.fill(mandelCache, -1);
+        if (resumableKernel != null) {
+            if (orbits == null || orbits.length != 2 * mandelCache.length) orbits = new double[2 * mandelCache.length];
+            Arrays.fill(orbits, Double.NaN);
+        }
+        if (predicted != null) verifyPrediction();
     }
 
-    @Override
-    protected void generateBlock(int x, int y) {
+    /**
+     * Moves the cache, the orbits and the image of the last frame by the whole pixels the view was panned by, if the
+     * coordinates of the columns and rows still in view are exactly the ones the last frame was generated with. Only
+     * the pixels exposed are left missing.
+     *
+     * @return false if the frame cannot be shifted from the last one
+     */
+    private boolean shiftFrom(Grid previous) {
+        if (grid == null || previous == null || !grid.isShiftableFrom(previous)) return false;
+        final int dx = panX;
+        final int dy = panY;
+        if (!isShifted(previous.columns(), grid.columns(), grid.stride(), dx)) return false;
+        if (!isShifted(previous.rows(), grid.rows(), grid.stride(), dy)) return false;
+        final int width = mandelState.getMandelWidth();
+        final int height = mandelState.getMandelHeight();
+        shiftRows(mandelCache, 1, width, height, dx, dy, -1);
+        if (orbits != null && grid.resumable()) shiftRows(orbits, 2, width, height, dx, dy, Double.NaN);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.copyArea(0, 0, width, height, -dx, -dy);
+        graphics.dispose();
+        return true;
+    }
+
+    /**
+     * The offset is the one the state panned by rather than one estimated from the spacing of the coordinates, that
+     * spacing can be below the resolution of the high words of double-double tables.
+     *
+     * @return whether every coordinate still within the table is exactly the old one of the value the offset moved in
+     */
+    private static boolean isShifted(double[] previous, double[] current, int stride, int offset) {
+        final int length = current.length / stride;
+        if (previous.length != current.length || Math.abs(offset) >= length) return false;
+        for (int i = Math.max(0, -offset); i < Math.min(length, length - offset); i++) {
+            for (int k = 0; k < stride; k++) {
+                if (current[stride * i + k] != previous[stride * (i + offset) + k]) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves the values of every pixel, stride values each, so that pixel (x, y) gets the values of pixel (x + dx, y + dy)
+     * and the pixels with nothing to move in get the missing value.
+     */
+    private static void shiftRows(int[] values, int stride, int width, int height, int dx, int dy, int missing) {
+        final int rowLength = stride * width;
+        final int kept = stride * (width - Math.abs(dx));
+        for (int k = 0; k < height; k++) {
+            // rows are moved in the order that reads every row before it is overwritten
+            final int y = dy > 0 ? k : height - 1 - k;
+            final int from = y + dy;
+            final int row = rowLength * y;
+            if (from < 0 || from >= height || kept <= 0) {
+                Arrays.fill(values, row, row + rowLength, missing);
+                continue;
+            }
+            System.arraycopy(values, rowLength * from + stride * Math.max(0, dx), values, row + stride * Math.max(0, -dx), kept);
+            if (dx > 0) Arrays.fill(values, row + kept, row + rowLength, missing);
+            if (dx < 0) Arrays.fill(values, row, row + rowLength - kept, missing);
+        }
+    }
+
+    /**
+     * Double version of {@link #shiftRows(int[], int, int, int, int, int, int)}
+     */
+    private static void shiftRows(double[] values, int stride, int width, int height, int dx, int dy, double missing) {
+        final int rowLength = stride * width;
+        final int kept = stride * (width - Math.abs(dx));
+        for (int k = 0; k < height; k++) {
+            final int y = dy > 0 ? k : height - 1 - k;
+            final int from = y + dy;
+            final int row = rowLength * y;
+            if (from < 0 || from >= height || kept <= 0) {
+                Arrays.fill(values, row, row + rowLength, missing);
+                continue;
+            }
+            System.arraycopy(values, rowLength * from + stride * Math.max(0, dx), values, row + stride * Math.max(0, -dx), kept);
+            if (dx > 0) Arrays.fill(values, row + kept, row + rowLength, missing);
+            if (dx < 0) Arrays.fill(values, row, row + rowLength - kept, missing);
+        }
+    }
+
+    /**
+     * Maps the cache of the last frame into the view. A pixel is guessed interior if it lands on a pixel of the last
+     * frame that was at max iterations along with all of its neighbours.
+     *
+     * @return guessed interior pixels of the generated rows, null if the last frame shows nothing of them
+     */
+    private boolean[] predictInterior(Frame previous) {
+        if (previous == null || previous.width() != frame.width() || previous.height() != frame.height()
+                || !previous.formula().equals(frame.formula())) return null;
+        // pixels are mapped between the views in double
+        final double magnitude = Math.max(Math.max(Math.abs(frame.minX()), Math.abs(frame.maxX())), Math.max(Math.abs(frame.minY()), Math.abs(frame.maxY())));
+        if (!PrecisionPolicy.resolvesInDouble(mandelState.getPixelSpacing(), magnitude)) return null;
+        final int width = frame.width();
+        final int height = frame.height();
+        final int maxIterations = mandelState.getMaxIterations();
+        final DoubleViewport viewport = DoubleViewport.of((GenericMandelState<?>) mandelState);
+        final double scaleX = width / (previous.maxX() - previous.minX());
+        final double scaleY = height / (previous.maxY() - previous.minY());
+        final int[] previousX = new int[width];
+        for (int x = 0; x < width; x++) {
+            previousX[x] = (int) Math.round((viewport.re(x) - previous.minX()) * scaleX);
+        }
+        final boolean[] interior = new boolean[width * height];
+        boolean any = false;
+        for (int y = rowStart; y < rowEnd; y++) {
+            final int py = (int) Math.round((viewport.im(y) - previous.minY()) * scaleY);
+            if (py < 1 || py > height - 2) continue;
+            for (int x = 0; x < width; x++) {
+                final int px = previousX[x];
+                if (px < 1 || px > width - 2) continue;
+                any |= interior[x + width * y] = isInteriorNeighbourhood(px, py, maxIterations);
+            }
+        }
+        return any ? interior : null;
+    }
+
+    private boolean isInteriorNeighbourhood(int px, int py, int maxIterations) {
+        final int width = frame.width();
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if (mandelCache[px + dx + width * (py + dy)] != maxIterations) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Iterates the boundary of the predicted interior, peeling off pixels that escape and iterating the predicted
+     * pixels they expose, until every predicted region is enclosed by pixels at max iterations. Only done for
+     * {@link FractalFormula#isFull() full} sets, nothing inside such an enclosure escapes and the rest of the region is
+     * filled in without iterating it.
+     */
+    private void verifyPrediction() {
+        final int width = mandelState.getMandelWidth();
+        final int maxIterations = mandelState.getMaxIterations();
+        int[] boundary = new int[64];
+        int count = 0;
+        for (int y = rowStart; y < rowEnd; y++) {
+            for (int x = 0; x < width; x++) {
+                final int index = x + width * y;
+                if (!predicted[index] || !isPredictedBoundary(x, y)) continue;
+                if (count == boundary.length) boundary = Arrays.copyOf(boundary, count * 2);
+                boundary[count++] = index;
+                mandelCache[index] = QUEUED;
+            }
+        }
+        while (count > 0) {
+            iterateAll(boundary, count);
+            if (isCancelled()) return;
+            int[] exposed = new int[64];
+            int exposedCount = 0;
+            for (int k = 0; k < count; k++) {
+                final int index = boundary[k];
+                if (mandelCache[index] == maxIterations) continue;
+                predicted[index] = false;
+                final int x = index % width;
+                final int y = index / width;
+                final int[] neighbours = {
+                        x > 0 ? index - 1 : -1, x < width - 1 ? index + 1 : -1,
+                        y > rowStart ? index - width : -1, y < rowEnd - 1 ? index + width : -1};
+                for (int neighbour : neighbours) {
+                    if (neighbour == -1 || !predicted[neighbour] || mandelCache[neighbour] != -1) continue;
+                    if (exposedCount == exposed.length) exposed = Arrays.copyOf(exposed, exposedCount * 2);
+                    exposed[exposedCount++] = neighbour;
+                    mandelCache[neighbour] = QUEUED;
+                }
+            }
+            boundary = exposed;
+            count = exposedCount;
+        }
+        for (int index = width * rowStart; index < width * rowEnd; index++) {
+            if (predicted[index] && mandelCache[index] == -1) mandelCache[index] = maxIterations;
+        }
+    }
+
+    /**
+     * @return whether the predicted pixel is on the edge of the generated rows or next to a pixel not predicted
+     */
+    private boolean isPredictedBoundary(int x, int y) {
+        final int width = mandelState.getMandelWidth();
+        if (x == 0 || x == width - 1 || y == rowStart || y == rowEnd - 1) return true;
+        final int index = x + width * y;
+        return !predicted[index - 1] || !predicted[index + 1] || !predicted[index - width] || !predicted[index + width];
+    }
+
+    /**
+     * Iterates the pixels in parallel.
+     */
+    private void iterateAll(int[] pixels, int count) {
+        final int width = mandelState.getMandelWidth();
+        final List<Runnable> chunks = new ArrayList<>();
+        for (int start = 0; start < count; start += BOUNDARY_CHUNK) {
+            final int from = start, to = Math.min(start + BOUNDARY_CHUNK, count);
+            chunks.add(() -> {
+                if (isCancelled()) return;
+                for (int k = from; k < to; k++) {
+                    final int index = pixels[k];
+                    mandelCache[index] = pixelAt(index % width, index / width);
+                }
+            });
+        }
+        invokeAll(chunks);
+    }
+
+    /**
+     * @return formula the kernels of the frame were resolved from
+     */
+    private FractalFormula resolveKernels() {
+        final FractalFormula formula = getFormula();
+        kernel = skippingIfToggled(formula.kernel(mandelState));
+        distanceKernel = mandelState.isDistanceToggled() ? formula.distanceKernel(mandelState) : null;
+        distance = distanceKernel != null;
+        tileKernels = distance ? null : tileKernels(formula);
+        resumableKernel = mandelState.isProgressiveToggled() && !distance && kernel instanceof ResumableKernel resumable ? resumable : null;
+        return formula;
+    }
+
+    private FractalKernel skippingIfToggled(FractalKernel formulaKernel) {
+        return mandelState.isPerformanceToggled()
+                ? FractalKernel.skipping(formulaKernel, mandelState.maxSkipped(), mandelState.getMaxIterations())
+                : formulaKernel;
+    }
+
+    /**
+     * Picks the cheapest tier for every tile of a double-double frame. The precision of a coordinate is relative to its
+     * magnitude, tiles closer to the axes than the corners deciding the tier of the state can often still be iterated
+     * in double.
+     *
+     * @return kernel per tile, null if every tile needs the tier of the state
+     */
+    private FractalKernel[] tileKernels(FractalFormula formula) {
+        if (!(mandelState instanceof MandelDoubleDoubleState doubleDoubleState)) return null;
+        final DoubleViewport viewport = DoubleViewport.of(doubleDoubleState);
+        final double pixelSpacing = mandelState.getPixelSpacing();
+        final int width = mandelState.getMandelWidth();
+        final int height = mandelState.getMandelHeight();
+        final int blockSize = getBlockSize();
+        final int columns = (width + blockSize - 1) / blockSize;
+        final int rows = (height + blockSize - 1) / blockSize;
+        final FractalKernel[] kernels = new FractalKernel[columns * rows];
+        FractalKernel doubleKernel = null;
+        for (int row = 0; row < rows; row++) {
+            final int y0 = row * blockSize;
+            final int y1 = Math.min(y0 + blockSize, height) - 1;
+            final double magnitudeY = Math.max(Math.abs(viewport.im(y0)), Math.abs(viewport.im(y1)));
+            for (int column = 0; column < columns; column++) {
+                final int x0 = column * blockSize;
+                final int x1 = Math.min(x0 + blockSize, width) - 1;
+                final double magnitude = Math.max(magnitudeY, Math.max(Math.abs(viewport.re(x0)), Math.abs(viewport.re(x1))));
+                if (!PrecisionPolicy.resolvesInDouble(pixelSpacing, magnitude)) {
+                    kernels[column + columns * row] = kernel;
+                    continue;
+                }
+                if (doubleKernel == null) {
+                    // a bounds only copy, the frame maps its own double tables
+                    doubleKernel = skippingIfToggled(formula.kernel(new MandelDoubleState(doubleDoubleState)));
+                }
+                kernels[column + columns * row] = doubleKernel;
+            }
+        }
+        return doubleKernel == null ? null : kernels;
+    }
+
+    /**
+     * @return kernel of the tile of the pixel
+     */
+    private FractalKernel kernelAt(int x, int y) {
+        if (tileKernels == null) return kernel;
         final int blockSize = getBlockSize();
-        final int optimizationBlockSize = panelState.getOptimizationBlockSize();
+        final int columns = (mandelState.getMandelWidth() + blockSize - 1) / blockSize;
+        return tileKernels[x / blockSize + columns * (y / blockSize)];
+    }
+
+    /**
+     * Raises the max iterations of the last frame. The pixels it left at max iterations are resumed where they stopped
+     * if it kept them resumable, otherwise the whole view is generated again at the new limit.
+     *
+     * @return false if the view changed since the last frame, nothing is generated then
+     */
+    public boolean deepen(int maxIterations) {
+        final int previous = mandelState.getMaxIterations();
+        if (frame == null || maxIterations <= previous || !frame.equals(Frame.of(mandelState, getFormula()))) return false;
+        final boolean resumable = resumableKernel != null;
+        mandelState.setMaxIterations(maxIterations);
+        resolveKernels();
+        if (!resumable || resumableKernel == null) {
+            generateImage();
+            return true;
+        }
+        resumeFrom = previous;
+        try {
+            generateImage();
+        } finally {
+            resumeFrom = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Pans the view by whole pixels. The next frame keeps the pixels of the last one still in view if the state moved
+     * them exactly, and only generates the ones exposed.
+     */
+    public void pan(int dx, int dy) {
+        panned |= mandelState.pan(dx, dy);
+        panX += dx;
+        panY += dy;
+    }
+
+    /**
+     * @return whether the last frame kept its pixels left at max iterations resumable
+     */
+    public boolean isResumable() {
+        return resumableKernel != null;
+    }
+
+    /**
+     * @return whether the blocks being generated resume the pixels of a deepened frame
+     */
+    protected boolean isResuming() {
+        return resumeFrom > 0;
+    }
+
+    /**
+     * Finds the rows that mirror others across the symmetry of the formula. Only a view whose axis falls on a pixel or
+     * halfway between two is mirrored, the mirrored pixel then lands on another pixel.
+     */
+    private void findSymmetry(FractalFormula.Symmetry symmetry) {
+        final int width = mandelState.getMandelWidth();
+        final int height = mandelState.getMandelHeight();
+        final GenericMandelState<?> view = (GenericMandelState<?>) mandelState;
+        mirrorRow = symmetry == FractalFormula.Symmetry.NONE ? -1 : mirrorAxis(view.getMinY().doubleValue(), view.getMaxY().doubleValue(), height);
+        mirrorColumn = -1;
+        if (mirrorRow != -1 && symmetry == FractalFormula.Symmetry.POINT) {
+            mirrorColumn = mirrorAxis(view.getMinX().doubleValue(), view.getMaxX().doubleValue(), width);
+            // pixels whose mirror is outside the image are iterated while mirroring, not worth it for most of a row
+            final int mirroredColumns = Math.min(width - 1, mirrorColumn) - Math.max(0, mirrorColumn - width + 1) + 1;
+            if (mirrorColumn == -1 || mirroredColumns < width / 2) mirrorRow = -1;
+        }
+        if (mirrorRow == -1) {
+            rowStart = 0;
+            rowEnd = height;
+        } else if (mirrorRow >= height - 1) {
+            // axis in the lower half, the rows after it are mirrored
+            rowStart = 0;
+            rowEnd = mirrorRow / 2 + 1;
+        } else {
+            rowStart = (mirrorRow + 1) / 2;
+            rowEnd = height;
+        }
+    }
+
+    /**
+     * @return twice the pixel coordinate of zero if it falls within a millionth of a pixel or of halfway between two
+     * pixels of the image, -1 otherwise
+     */
+    private static int mirrorAxis(double min, double max, int pixels) {
+        final double axis = -min / (max - min) * pixels * 2;
+        final long rounded = Math.round(axis);
+        if (rounded < 0 || rounded > 2L * (pixels - 1) || Math.abs(axis - rounded) > MIRROR_TOLERANCE) return -1;
+        return (int) rounded;
+    }
+
+    @Override
+    protected int getRowStart() {
+        return rowStart;
+    }
+
+    @Override
+    protected int getRowEnd() {
+        return rowEnd;
+    }
+
+    /**
+     * Copies the generated rows to the rows mirroring them.
+     */
+    @Override
+    protected void afterGenerate() {
+        if (mirrorRow == -1) return;
+        final int height = mandelState.getMandelHeight();
+        final int from = rowStart > 0 ? 0 : rowEnd;
+        final int to = rowStart > 0 ? rowStart : height;
+        final List<Runnable> strips = new ArrayList<>();
+        for (int y = from; y < to; y += getBlockSize()) {
+            final int y0 = y, y1 = Math.min(y + getBlockSize(), to);
+            strips.add(() -> {
+                if (!isCancelled()) mirrorRows(y0, y1);
+            });
+        }
+        invokeAll(strips);
+    }
+
+    /**
+     * Forgets the view of a cancelled frame, its cache is partial and can neither be deepened nor predicted from.
+     */
+    @Override
+    protected void afterCancel() {
+        frame = null;
+        grid = null;
+    }
+
+    private void mirrorRows(int y0, int y1) {
+        final int width = mandelState.getMandelWidth();
+        for (int y = y0; y < y1; y++) {
+            final int my = mirrorRow - y;
+            for (int x = 0; x < width; x++) {
+                final int mx = mirrorColumn == -1 ? x : mirrorColumn - x;
+                paintPixel(x, y, mx >= 0 && mx < width ? iterationAt(mx, my) : iterationAt(x, y));
+            }
+        }
+    }
+
+    /**
+     * Iterates the corners of every cell, clamped to the generated rows like the corners of the blocks, and sums them
+     * up per cell. The corners are cached, the blocks pick them up instead of iterating them again. Distance shades
+     * and resumed frames are not estimated.
+     */
+    @Override
+    protected long[] estimateCosts(int cellSize, int columns, int rows) {
+        if (distance || resumeFrom > 0) return null;
+        final int width = mandelState.getMandelWidth();
+        final int[] corners = new int[(columns + 1) * (rows + 1)];
+        final List<Runnable> probes = new ArrayList<>();
+        for (int row = 0; row <= rows; row++) {
+            final int r = row;
+            final int py = Math.min(rowStart + row * cellSize, rowEnd - 1);
+            probes.add(() -> {
+                if (isCancelled()) return;
+                for (int column = 0; column <= columns; column++) {
+                    corners[column + (columns + 1) * r] = iterationAt(Math.min(column * cellSize, width - 1), py);
+                }
+            });
+        }
+        invokeAll(probes);
+        final long[] costs = new long[columns * rows];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                final int corner = column + (columns + 1) * row;
+                // escaped pixels cost their iterations, the interior the max iterations
+                costs[column + columns * row] = 1L + corners[corner] + corners[corner + 1] + corners[corner + columns + 1] + corners[corner + columns + 2];
+            }
+        }
+        return costs;
+    }
+
+    /**
+     * @return formula of the pixels
+     */
+    protected FractalFormula getFormula() {
+        return mandelState.getFormula();
+    }
+
+    @Override
+    protected void generateBlock(int x, int y, int blockSize) {
+        if (resumeFrom > 0) {
+            resumeBlock(x, y, blockSize);
+            return;
+        }
+        final int optimizationBlockSize = Math.min(blockSize, panelState.getOptimizationBlockSize());
         for (int i = 0; i < blockSize; i += optimizationBlockSize) {
             for (int j = 0; j < blockSize; j += optimizationBlockSize) {
+                if (isCancelled()) return;
                 generateFractalBlock(x + j, y + i, optimizationBlockSize);
             }
         }
@@ -61,32 +644,55 @@ public class MandelbrotBlockImageGenerator extends BlockImageGeneratorAbstract {
     public void resizeImage(int width, int height) {
         this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         this.mandelCache = new int[width * height];
+        this.frame = null;
+        this.grid = null;
+    }
+
+    /**
+     * Resumes the pixels of the block left at the max iterations the frame is deepened from and colours every pixel of
+     * it again, colours are relative to max iterations.
+     */
+    private void resumeBlock(int x, int y, int blockSize) {
+        final int x1 = Math.min(x + blockSize, mandelState.getMandelWidth());
+        final int y1 = Math.min(y + blockSize, rowEnd);
+        for (int py = y; py < y1 && !isCancelled(); py++) {
+            for (int px = x; px < x1; px++) {
+                paintPixel(px, py, iterationAt(px, py));
+            }
+        }
     }
 
     private void generateFractalBlock(int x, int y, int blockSize) {
+        if (isShiftedIn(x, y, blockSize)) return;
+        if (distance && fillFarBlock(x, y, blockSize)) return;
+        if (predicted != null && isCached(x, y, blockSize)) {
+            paintBlock(x, y, blockSize);
+            return;
+        }
         int optimizationBlockSize = blockSize;
 
         while (optimizationBlockSize > 2) {
             // Ensure we don't go out of bounds
             int x1 = Math.min(x, mandelState.getMandelWidth() - 1);
-            int y1 = Math.min(y, mandelState.getMandelHeight() - 1);
+            int y1 = Math.min(y, rowEnd - 1);
             int x2 = Math.min(x + optimizationBlockSize, mandelState.getMandelWidth() - 1);
-            int y2 = Math.min(y + optimizationBlockSize, mandelState.getMandelHeight() - 1);
+            int y2 = Math.min(y + optimizationBlockSize, rowEnd - 1);
 
-            int c1 = mandelCache[x1 + mandelState.getMandelWidth() * y1] = mandelbrotAt(x1, y1);
-            int c2 = mandelCache[x2 + mandelState.getMandelWidth() * y1] = mandelbrotAt(x2, y1);
-            int c3 = mandelCache[x1 + mandelState.getMandelWidth() * y2] = mandelbrotAt(x1, y2);
-            int c4 = mandelCache[x2 + mandelState.getMandelWidth() * y2] = mandelbrotAt(x2, y2);
+            // corners probed for the cost of the cell are cached already
+            int c1 = iterationAt(x1, y1);
+            int c2 = iterationAt(x2, y1);
+            int c3 = iterationAt(x1, y2);
+            int c4 = iterationAt(x2, y2);
 
             // If all corners are black, fill the entire block as black
-            int maxIterations = panelState.getMaxIterations();
+            int maxIterations = mandelState.getMaxIterations();
             if (c1 == maxIterations && c2 == maxIterations &&
                     c3 == maxIterations && c4 == maxIterations) {
                 for (int i = 0; i < optimizationBlockSize; i++) {
                     for (int j = 0; j < optimizationBlockSize; j++) {
                         int px = x + i;
                         int py = y + j;
-                        if (px < mandelState.getMandelWidth() && py < mandelState.getMandelHeight()) {
+                        if (px < mandelState.getMandelWidth() && py < rowEnd) {
                             image.setRGB(px, py, Color.BLACK.getRGB());
                             mandelCache[px + mandelState.getMandelWidth() * py] = maxIterations;
                         }
@@ -97,22 +703,132 @@ public class MandelbrotBlockImageGenerator extends BlockImageGeneratorAbstract {
                 optimizationBlockSize = optimizationBlockSize >> 1;
             }
         }
+        fillRows(x, y, blockSize);
+        paintBlock(x, y, blockSize);
+    }
+
+    /**
+     * @return whether the whole block was shifted in from the last frame along with the image, nothing is left to
+     * generate of it
+     */
+    protected boolean isShiftedIn(int x, int y, int blockSize) {
+        return shifted && isCached(x, y, blockSize);
+    }
+
+    /**
+     * @return whether every pixel of the block is cached already, as the predicted interior and the pixels shifted from
+     * the last frame are before the blocks start
+     */
+    private boolean isCached(int x, int y, int blockSize) {
+        final int width = mandelState.getMandelWidth();
+        for (int py = y; py < Math.min(y + blockSize, rowEnd); py++) {
+            for (int px = x; px < Math.min(x + blockSize, width); px++) {
+                if (mandelCache[px + width * py] == -1) return false;
+            }
+        }
+        return true;
+    }
+
+    private void paintBlock(int x, int y, int blockSize) {
         for (int i = 0; i < blockSize; i++) {
             for (int j = 0; j < blockSize; j++) {
                 int px = x + i;
                 int py = y + j;
-                if (px < mandelState.getMandelWidth() && py < mandelState.getMandelHeight()) {
-                    final int index = px + mandelState.getMandelWidth() * py;
+                if (px < mandelState.getMandelWidth() && py < rowEnd) {
+                    paintPixel(px, py, iterationAt(px, py));
+                }
+            }
+        }
+    }
 
-                    int it;
-                    if ((it = mandelCache[index]) == -1) {
-                        it = mandelCache[index] = mandelbrotAt(px, py);
-                    }
-                    if (mandelState.isSmoothToggled()) {
-                        image.setRGB(px, py, mandelState.getColorCache().computeIfAbsent(it, k -> colourState.getColour_smooth(k, mandelState.getMaxIterations())).getRGB());
-                    } else {
-                        // no need to cache
-                        image.setRGB(px, py, colourState.getColour(it, mandelState.getMaxIterations()).getRGB());
+    /**
+     * @return cached iterations of the pixel, iterating it first if it is missing or resuming it if the frame is
+     * deepened from where it stopped
+     */
+    protected int iterationAt(int px, int py) {
+        final int index = px + mandelState.getMandelWidth() * py;
+        int it;
+        if ((it = mandelCache[index]) == -1) {
+            it = mandelCache[index] = pixelAt(px, py);
+        } else if (resumeFrom > 0 && it == resumeFrom) {
+            it = mandelCache[index] = resumeAt(px, py, index);
+        }
+        return it;
+    }
+
+    /**
+     * @return iterations of a pixel left at the max iterations the frame is deepened from
+     */
+    private int resumeAt(int px, int py, int index) {
+        final double re = orbits[2 * index];
+        if (re == ResumableKernel.INSIDE) return mandelState.getMaxIterations();
+        // pixels filled in have no z to resume from
+        return resumableKernel.iterate(px, py, Double.isNaN(re) ? 0 : resumeFrom, orbits, index);
+    }
+
+    /**
+     * Caches the iterations of the pixel and colours it.
+     */
+    protected void paintPixel(int px, int py, int it) {
+        mandelCache[px + mandelState.getMandelWidth() * py] = it;
+        if (distance) {
+            image.setRGB(px, py, colourState.getColour_distance(it, mandelState.getMaxIterations()).getRGB());
+        } else if (mandelState.isSmoothToggled()) {
+            image.setRGB(px, py, mandelState.getColorCache().computeIfAbsent(it, k -> colourState.getColour_smooth(k, mandelState.getMaxIterations())).getRGB());
+        } else {
+            // no need to cache
+            image.setRGB(px, py, colourState.getColour(it, mandelState.getMaxIterations()).getRGB());
+        }
+    }
+
+    /**
+     * Fills the block with the farthest shade if the distance estimate at its centre proves every pixel of it is at
+     * least the saturation distance away from the boundary. The true distance is at least a quarter of the estimate.
+     *
+     * @return true if the block was filled
+     */
+    private boolean fillFarBlock(int x, int y, int blockSize) {
+        final int width = mandelState.getMandelWidth();
+        final int height = rowEnd;
+        if (x >= width || y >= height) return false;
+        final double pixels = distanceKernel.distance(Math.min(x + blockSize / 2, width - 1), Math.min(y + blockSize / 2, height - 1)) / mandelState.getPixelSpacing();
+        // the centre is clamped on the edges, the whole diagonal bounds the distance to any pixel of the block
+        if (pixels / 4 - blockSize * Math.sqrt(2) < CpuMandelbrot.DISTANCE_SATURATION_PIXELS) return false;
+        final int shade = CpuMandelbrot.distanceShade(Double.POSITIVE_INFINITY, mandelState);
+        for (int i = 0; i < blockSize && x + i < width; i++) {
+            for (int j = 0; j < blockSize && y + j < height; j++) {
+                paintPixel(x + i, y + j, shade);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Iterates the rows of the block that still have missing pixels a whole row segment at a time if the state
+     * supports it. Pixels left missing are iterated one by one afterward.
+     */
+    private void fillRows(int x, int y, int blockSize) {
+        final int width = mandelState.getMandelWidth();
+        final int length = Math.min(blockSize, width - x);
+        if (length <= 0 || distance) return;
+        final int[] rowIterations = new int[length];
+        final double[] rowOrbits = resumableKernel == null ? null : new double[2 * length];
+        for (int j = 0; j < blockSize && y + j < rowEnd; j++) {
+            final int rowStart = x + width * (y + j);
+            boolean missing = false;
+            for (int i = 0; i < length && !missing; i++) {
+                missing = mandelCache[rowStart + i] == -1;
+            }
+            if (!missing) continue;
+            if (!(rowOrbits == null
+                    ? kernelAt(x, y + j).iterateRow(x, y + j, length, rowIterations)
+                    : resumableKernel.iterateRow(x, y + j, length, rowIterations, rowOrbits))) return;
+            for (int i = 0; i < length; i++) {
+                if (mandelCache[rowStart + i] == -1) {
+                    mandelCache[rowStart + i] = rowIterations[i];
+                    if (rowOrbits != null) {
+                        orbits[2 * (rowStart + i)] = rowOrbits[2 * i];
+                        orbits[2 * (rowStart + i) + 1] = rowOrbits[2 * i + 1];
                     }
                 }
             }
@@ -123,13 +839,58 @@ public class MandelbrotBlockImageGenerator extends BlockImageGeneratorAbstract {
         return mandelState;
     }
 
-    protected int mandelbrotAt(int x, int y) {
-        return CpuMandelbrot.mandelbrotAt(x, y, mandelState);
+    /**
+     * @return iterations of the pixel or its distance shade if the frame is shaded by distance
+     */
+    private int pixelAt(int x, int y) {
+        if (distance) return CpuMandelbrot.distanceShade(distanceKernel.distance(x, y), mandelState);
+        if (resumableKernel != null) return resumableKernel.iterate(x, y, 0, orbits, x + mandelState.getMandelWidth() * y);
+        return kernelAt(x, y).iterate(x, y);
     }
 
-
     @Override
     public BufferedImage getImage() {
         return image;
     }
+
+    /**
+     * Coordinate tables of a frame as laid out by its state, one value per column and row or a hi and a lo part for
+     * double-double, along with what its cached values depend on besides them.
+     */
+    private record Grid(double[] columns, double[] rows, int stride, int maxIterations, boolean distance, boolean resumable, boolean interactive) {
+
+        /**
+         * @return grid of the view, null if its state keeps no coordinate tables
+         */
+        static Grid of(MandelState mandelState, boolean distance, boolean resumable) {
+            return switch (mandelState) {
+                case MandelDoubleState s -> new Grid(s.getRealCoordinates(), s.getImaginaryCoordinates(), 1,
+                        s.getMaxIterations(), distance, resumable, s.isInteractive());
+                case MandelDoubleDoubleState s -> new Grid(s.getRealCoordinates(), s.getImaginaryCoordinates(), 2,
+                        s.getMaxIterations(), distance, resumable, s.isInteractive());
+                default -> null;
+            };
+        }
+
+        /**
+         * @return whether the cached values of the other grid mean the same for this one
+         */
+        boolean isShiftableFrom(Grid other) {
+            return stride == other.stride && maxIterations == other.maxIterations && distance == other.distance
+                    && interactive == other.interactive && (!resumable || other.resumable);
+        }
+    }
+
+    /**
+     * What a frame shows, it can only be deepened while that stays the same. Views beyond double are compared by their
+     * double bounds, their kernels are not resumable and deepening them generates the view again anyway.
+     */
+    private record Frame(double minX, double maxX, double minY, double maxY, int width, int height, FractalFormula formula) {
+
+        static Frame of(MandelState mandelState, FractalFormula formula) {
+            final GenericMandelState<?> view = (GenericMandelState<?>) mandelState;
+            return new Frame(view.getMinX().doubleValue(), view.getMaxX().doubleValue(), view.getMinY().doubleValue(), view.getMaxY().doubleValue(),
+                    mandelState.getMandelWidth(), mandelState.getMandelHeight(), formula);
+        }
+    }
 }
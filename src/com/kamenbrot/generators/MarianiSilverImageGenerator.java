@@ -0,0 +1,148 @@
+package com.kamenbrot.generators;
+
+import com.kamenbrot.state.ColourState;
+import com.kamenbrot.state.MandelState;
+import com.kamenbrot.state.PanelState;
+
+import java.awt.image.BufferedImage;
+import java.io.Serial;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Mariani-Silver rectangle subdivision. The whole border of a rectangle is iterated and if every border pixel has the
+ * same iterations the inside is filled with it, since the set is connected nothing different can hide inside such a
+ * border. Otherwise the rectangle is split in two along its longer side and both halves are done as forked tasks.
+ * <p>
+ * The halves share the line they were split along, so pixels on it are visited by both. The cache keeps a pixel from
+ * being iterated again once it is stored, but two halves running at the same time can both miss it and iterate the
+ * shared line twice.
+ * <p>
+ * Filling a rectangle from its border assumes the set is connected. Formulas not known to have a connected set, see
+ * {@link com.kamenbrot.fractals.FractalFormula#isConnected()}, are iterated pixel by pixel instead.
+ */
+public class MarianiSilverImageGenerator extends MandelbrotBlockImageGenerator {
+
+    /**
+     * Rectangles this narrow are iterated pixel by pixel instead of split any further
+     */
+    private static final int MIN_SIZE = 6;
+
+    public MarianiSilverImageGenerator(MandelState mandelState, PanelState panelState, ForkJoinPool pool, ColourState colourState) {
+        super(mandelState, panelState, pool, colourState);
+    }
+
+    public MarianiSilverImageGenerator(ImageGenerator imageGenerator, MandelState mandelState, PanelState panelState, ColourState colourState) {
+        super(imageGenerator, mandelState, panelState, colourState);
+    }
+
+    public MarianiSilverImageGenerator(MandelState mandelState, PanelState panelState, ForkJoinPool pool, int blockSize, int[] mandelCache, BufferedImage image, ColourState colourState) {
+        super(mandelState, panelState, pool, blockSize, mandelCache, image, colourState);
+    }
+
+    /**
+     * Blocks are kept whole. A rectangle is split at its midpoints, so a block split into cells is divided along other
+     * lines and its pixels filled differently.
+     */
+    @Override
+    protected long[] estimateCosts(int cellSize, int columns, int rows) {
+        return null;
+    }
+
+    @Override
+    protected void generateBlock(int x, int y, int size) {
+        // a deepened frame only resumes the pixels left at max iterations, its rectangles are already filled
+        if (isResuming()) {
+            super.generateBlock(x, y, size);
+            return;
+        }
+        if (isShiftedIn(x, y, size)) return;
+        final MandelState mandelState = getMandelState();
+        final int x1 = Math.min(x + size, mandelState.getMandelWidth()) - 1;
+        final int y1 = Math.min(y + size, getRowEnd()) - 1;
+        if (x1 < x || y1 < y) return;
+        if (!getFormula().isConnected()) {
+            // a disconnected set can hide pieces inside a uniform border, every pixel is iterated
+            for (int py = y; py <= y1 && !isCancelled(); py++) {
+                for (int px = x; px <= x1; px++) {
+                    paintPixel(px, py, iterationAt(px, py));
+                }
+            }
+            return;
+        }
+        new RectangleTask(x, y, x1, y1).invoke();
+    }
+
+    /**
+     * Rectangle with inclusive corners (x0, y0) and (x1, y1)
+     */
+    private class RectangleTask extends RecursiveAction {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final int x0;
+        private final int y0;
+        private final int x1;
+        private final int y1;
+
+        private RectangleTask(int x0, int y0, int x1, int y1) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected void compute() {
+            if (isCancelled()) return;
+            if (x1 - x0 < MIN_SIZE || y1 - y0 < MIN_SIZE) {
+                for (int py = y0; py <= y1; py++) {
+                    for (int px = x0; px <= x1; px++) {
+                        paintPixel(px, py, iterationAt(px, py));
+                    }
+                }
+                return;
+            }
+            if (borderIsUniform()) {
+                final int it = iterationAt(x0, y0);
+                for (int py = y0 + 1; py < y1; py++) {
+                    for (int px = x0 + 1; px < x1; px++) {
+                        paintPixel(px, py, it);
+                    }
+                }
+                return;
+            }
+            if (x1 - x0 >= y1 - y0) {
+                final int mid = (x0 + x1) >>> 1;
+                invokeAll(new RectangleTask(x0, y0, mid, y1), new RectangleTask(mid, y0, x1, y1));
+            } else {
+                final int mid = (y0 + y1) >>> 1;
+                invokeAll(new RectangleTask(x0, y0, x1, mid), new RectangleTask(x0, mid, x1, y1));
+            }
+        }
+
+        /**
+         * Iterates and paints every border pixel, all of them even after a mismatch since the halves share them.
+         */
+        private boolean borderIsUniform() {
+            final int it = iterationAt(x0, y0);
+            boolean uniform = true;
+            for (int px = x0; px <= x1; px++) {
+                uniform &= paintBorder(px, y0, it);
+                uniform &= paintBorder(px, y1, it);
+            }
+            for (int py = y0 + 1; py < y1; py++) {
+                uniform &= paintBorder(x0, py, it);
+                uniform &= paintBorder(x1, py, it);
+            }
+            return uniform;
+        }
+
+        private boolean paintBorder(int px, int py, int expected) {
+            final int it = iterationAt(px, py);
+            paintPixel(px, py, it);
+            return it == expected;
+        }
+    }
+}
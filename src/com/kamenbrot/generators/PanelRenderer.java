@@ -1,10 +1,13 @@
 package com.kamenbrot.generators;
 
-import javax.swing.*;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Runs the render tasks added to it on one thread, one after another. A task generating a frame holds that thread until
+ * the frame is done, so views that must not wait on each other each get a renderer of their own.
+ */
 public class PanelRenderer {
 
   private final ScheduledExecutorService exec;
@@ -17,6 +20,13 @@ public class PanelRenderer {
 	this(Executors.newSingleThreadScheduledExecutor());
   }
 
+  /**
+   * @param threadName name of the render thread, shown in thread dumps and profilers
+   */
+  public PanelRenderer(String threadName) {
+	this(Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, threadName)));
+  }
+
   public RenderTask addRenderTask(Runnable runnable) {
 	final RenderTask task = new RenderTask(runnable);
 	this.exec.scheduleAtFixedRate(task, 0, 32, TimeUnit.MILLISECONDS);
@@ -41,7 +51,13 @@ public class PanelRenderer {
 	public void run() {
 	  if (needsRender) {
 		needsRender = false;
-		SwingUtilities.invokeLater(task);
+		// frames are generated off the event dispatch thread so input keeps arriving, and cancelling them, meanwhile
+		try {
+		  task.run();
+		} catch (RuntimeException e) {
+		  // a failed frame must not stop the renders scheduled after it
+		  Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+		}
 	  }
 	}
   }
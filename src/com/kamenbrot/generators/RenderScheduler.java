@@ -0,0 +1,100 @@
+package com.kamenbrot.generators;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Hands out the pools every view renders on, one per priority class. The parallelism is partitioned between them: the
+ * lower classes each reserve a share of it and the foreground class gets what is left, so together they never run more
+ * workers than the parallelism allows and a lower class never takes workers from a higher one. Every class has at least
+ * one worker, with fewer than three the classes overlap.
+ */
+public final class RenderScheduler {
+
+    /**
+     * System property overriding the parallelism of the shared scheduler, the available processors by default
+     */
+    public static final String PARALLELISM_PROPERTY = "kamenbrot.parallelism";
+
+    private static final RenderScheduler SHARED = new RenderScheduler(Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()));
+
+    public enum Priority {
+        /**
+         * Frames of the view being navigated, the parallelism not reserved by the other classes
+         */
+        FOREGROUND(0.0),
+        /**
+         * Previews next to the main view such as the julia mini panel
+         */
+        PREVIEW(0.125),
+        /**
+         * Exports nobody waits on interactively
+         */
+        BACKGROUND(0.125);
+
+        /**
+         * Fraction of the parallelism of the scheduler reserved for the class, at least one thread
+         */
+        private final double reservedShare;
+
+        Priority(double reservedShare) {
+            this.reservedShare = reservedShare;
+        }
+    }
+
+    private final int parallelism;
+    private final Map<Priority, ForkJoinPool> pools = new EnumMap<>(Priority.class);
+
+    public RenderScheduler(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return scheduler of the process
+     */
+    public static RenderScheduler shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return pool of the priority class, created on first use
+     */
+    public synchronized ForkJoinPool pool(Priority priority) {
+        return pools.computeIfAbsent(priority, this::newPool);
+    }
+
+    /**
+     * Runs the task on the pool of the priority class without waiting for it.
+     */
+    public void submit(Priority priority, Runnable task) {
+        pool(priority).execute(task);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return workers of the pool of the priority class
+     */
+    public int threads(Priority priority) {
+        if (priority != Priority.FOREGROUND) return reserved(priority);
+        return Math.max(1, parallelism - reserved(Priority.PREVIEW) - reserved(Priority.BACKGROUND));
+    }
+
+    private int reserved(Priority priority) {
+        return Math.max(1, (int) Math.round(parallelism * priority.reservedShare));
+    }
+
+    private ForkJoinPool newPool(Priority priority) {
+        final String name = "render-" + priority.name().toLowerCase() + "-";
+        return new ForkJoinPool(threads(priority), pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(name + thread.getPoolIndex());
+            return thread;
+        }, null, true);
+    }
+}
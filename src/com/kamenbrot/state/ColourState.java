@@ -1,5 +1,7 @@
 package com.kamenbrot.state;
 
+import com.kamenbrot.fractals.mandelbrot.CpuMandelbrot;
+
 import java.awt.Color;
 
 public class ColourState {
@@ -28,6 +30,15 @@ public class ColourState {
     return colours[index];
   }
 
+  /**
+   * @param shade distance shade, see {@link CpuMandelbrot#distanceShade}
+   * @return colour running through the palette from the boundary to the saturation distance
+   */
+  public Color getColour_distance(int shade, int maxIterations) {
+    if (shade == maxIterations) return Color.BLACK;
+    return colours[shade * (colours.length - 1) / (CpuMandelbrot.DISTANCE_SHADES - 1)];
+  }
+
   public void setColours(Color[] colours) {
     this.colours = colours;
   }
@@ -20,25 +20,35 @@ public class MandelDoubleDoubleState extends MandelStateAbstract<DoubleDouble> {
     private DoubleDouble centerX = DoubleDouble.ZERO;
     private DoubleDouble centerY = DoubleDouble.ZERO;
     private DoubleDouble savedMaxX = maxX;
-    private final DoubleDouble[] cache;
+    private double rangeX = GenericMandelState.MAX_X - GenericMandelState.MIN_X;
+    /**
+     * Real coordinate of every column and imaginary coordinate of every row laid out as in
+     * {@link ComplexMapping#mapComplex(int, DoubleDouble, DoubleDouble)}, mapped again whenever the view changes.
+     * Replaced rather than modified so a frame keeps the tables it started with.
+     */
+    private volatile double[] realCoordinates;
+    private volatile double[] imaginaryCoordinates;
 
     public MandelDoubleDoubleState(int maxIterations, int mandelWidth, int mandelHeight, Map<Integer, Color> colorCache) {
         super(maxIterations, mandelWidth, mandelHeight, colorCache);
-        final int len = mandelWidth * mandelHeight;
-        cache = new DoubleDouble[len];
-        for (int i = 0; i < len; i++) {
-            cache[i] = DoubleDouble.valueOf(i);
-        }
+        mapCoordinates(mandelWidth, mandelHeight);
     }
 
     public MandelDoubleDoubleState(MandelDoubleState other) {
         super(other);
-        final int len = getMandelWidth() * getMandelHeight();
-        cache = new DoubleDouble[len];
-        for (int i = 0; i < len; i++) {
-            cache[i] = DoubleDouble.valueOf(i);
-        }
+        this.minX = DoubleDouble.valueOf(other.getMinX());
+        this.maxX = DoubleDouble.valueOf(other.getMaxX());
+        this.minY = DoubleDouble.valueOf(other.getMinY());
+        this.maxY = DoubleDouble.valueOf(other.getMaxY());
+        this.centerX = DoubleDouble.valueOf(other.getCenterX());
+        this.centerY = DoubleDouble.valueOf(other.getCenterY());
+        this.savedMaxX = DoubleDouble.valueOf(other.getSavedMaxX());
+        this.rangeX = maxX.sub(minX).doubleValue();
+        mapCoordinates(other.getMandelWidth(), other.getMandelHeight());
+    }
 
+    public MandelDoubleDoubleState(MandelPerturbationState other) {
+        super(other);
         this.minX = DoubleDouble.valueOf(other.getMinX());
         this.maxX = DoubleDouble.valueOf(other.getMaxX());
         this.minY = DoubleDouble.valueOf(other.getMinY());
@@ -46,11 +56,45 @@ public class MandelDoubleDoubleState extends MandelStateAbstract<DoubleDouble> {
         this.centerX = DoubleDouble.valueOf(other.getCenterX());
         this.centerY = DoubleDouble.valueOf(other.getCenterY());
         this.savedMaxX = DoubleDouble.valueOf(other.getSavedMaxX());
+        this.rangeX = maxX.sub(minX).doubleValue();
+        mapCoordinates(other.getMandelWidth(), other.getMandelHeight());
+    }
+
+    public MandelDoubleDoubleState(MandelFixedPointState other) {
+        super(other);
+        this.minX = DoubleDouble.valueOf(other.getMinX().toBigDecimal());
+        this.maxX = DoubleDouble.valueOf(other.getMaxX().toBigDecimal());
+        this.minY = DoubleDouble.valueOf(other.getMinY().toBigDecimal());
+        this.maxY = DoubleDouble.valueOf(other.getMaxY().toBigDecimal());
+        this.centerX = DoubleDouble.valueOf(other.getCenterX().toBigDecimal());
+        this.centerY = DoubleDouble.valueOf(other.getCenterY().toBigDecimal());
+        this.savedMaxX = DoubleDouble.valueOf(other.getSavedMaxX());
+        this.rangeX = maxX.sub(minX).doubleValue();
+        mapCoordinates(other.getMandelWidth(), other.getMandelHeight());
+    }
+
+    /**
+     * @return hi and lo parts of the real coordinate of every column of the view, not to be modified
+     */
+    public double[] getRealCoordinates() {
+        return realCoordinates;
+    }
+
+    /**
+     * @return hi and lo parts of the imaginary coordinate of every row of the view, not to be modified
+     */
+    public double[] getImaginaryCoordinates() {
+        return imaginaryCoordinates;
     }
 
     @Override
-    public DoubleDouble cachedValue(int i) {
-        return cache[i];
+    protected void viewportChanged() {
+        mapCoordinates(getMandelWidth(), getMandelHeight());
+    }
+
+    private void mapCoordinates(int width, int height) {
+        this.realCoordinates = ComplexMapping.mapComplex(width, minX, maxX);
+        this.imaginaryCoordinates = ComplexMapping.mapComplex(height, minY, maxY);
     }
 
     public MandelDoubleDoubleState(PanelState panelState, Map<Integer, Color> colorCache) {
@@ -87,13 +131,39 @@ public class MandelDoubleDoubleState extends MandelStateAbstract<DoubleDouble> {
         return maxY;
     }
 
+    @Override
+    public double getPixelSpacing() {
+        return rangeX / getMandelWidth();
+    }
+
     @Override
     public void setCenter(int x, int y) {
-        this.centerX = ComplexMapping.mapComplexOptimised(cache[x], cache[getMandelWidth()], minX, maxX);
-        this.centerY = ComplexMapping.mapComplexOptimised(cache[y], cache[getMandelHeight()], minY, maxY);
+        this.centerX = ComplexMapping.mapComplexOptimised(DoubleDouble.valueOf(x), DoubleDouble.valueOf(getMandelWidth()), minX, maxX);
+        this.centerY = ComplexMapping.mapComplexOptimised(DoubleDouble.valueOf(y), DoubleDouble.valueOf(getMandelHeight()), minY, maxY);
         calcZoom(1);
     }
 
+    /**
+     * Moves the bounds by the offsets and the coordinate tables along with them, the columns and rows still in view keep
+     * their coordinates exactly.
+     */
+    @Override
+    public boolean pan(int dx, int dy) {
+        final double[] columns = getRealCoordinates();
+        final double[] rows = getImaginaryCoordinates();
+        final DoubleDouble shiftX = ComplexMapping.mapComplexOptimised(DoubleDouble.valueOf(dx), DoubleDouble.valueOf(getMandelWidth()), minX, maxX).sub(minX);
+        final DoubleDouble shiftY = ComplexMapping.mapComplexOptimised(DoubleDouble.valueOf(dy), DoubleDouble.valueOf(getMandelHeight()), minY, maxY).sub(minY);
+        this.minX = minX.add(shiftX);
+        this.maxX = maxX.add(shiftX);
+        this.centerX = centerX.add(shiftX);
+        this.minY = minY.add(shiftY);
+        this.maxY = maxY.add(shiftY);
+        this.centerY = centerY.add(shiftY);
+        this.realCoordinates = ComplexMapping.shift(columns, dx, minX, maxX);
+        this.imaginaryCoordinates = ComplexMapping.shift(rows, dy, minY, maxY);
+        return true;
+    }
+
     @Override
     public void resetCoordinates() {
         this.minX = MIN_X;
@@ -127,6 +197,8 @@ public class MandelDoubleDoubleState extends MandelStateAbstract<DoubleDouble> {
         this.maxX = centerX.add(rangeX.div(DoubleDouble.TWO));
         this.minY = centerY.sub(rangeY.div(DoubleDouble.TWO));
         this.maxY = centerY.add(rangeY.div(DoubleDouble.TWO));
+        this.rangeX = maxX.sub(minX).doubleValue();
+        viewportChanged();
     }
 
     public DoubleDouble getSavedMaxX() {
@@ -14,29 +14,28 @@ public class MandelDoubleState extends MandelStateAbstract<Double> {
     private double centerX;
     private double centerY;
     private double savedMaxX = maxX;
-    private final Double[] cache;
+    /**
+     * Real coordinate of every column and imaginary coordinate of every row, mapped again whenever the view changes.
+     * Replaced rather than modified so a frame keeps the tables it started with.
+     */
+    private volatile double[] realCoordinates;
+    private volatile double[] imaginaryCoordinates;
 
     public MandelDoubleState(int maxIterations, int mandelWidth, int mandelHeight, Map<Integer, Color> colorCache) {
         super(maxIterations, mandelWidth, mandelHeight, colorCache);
-        final int len = mandelWidth * mandelHeight;
-        this.cache = new Double[len];
-        for (int i = 0; i < len; i++) {
-            cache[i] = (double) i;
-        }
+        mapCoordinates(mandelWidth, mandelHeight);
     }
 
     public MandelDoubleState(PanelState panelState, Map<Integer, Color> colorCache) {
         this(panelState.getMaxIterations(), panelState.getWidth(), panelState.getHeight(), colorCache);
     }
 
+    /**
+     * Copies the settings and the bounds rounded to double, nothing sized by the view besides the coordinate tables.
+     * Cheap enough for the double tiles of every double-double frame.
+     */
     public MandelDoubleState(MandelDoubleDoubleState other) {
         super(other);
-        final int len = getMandelWidth() * getMandelHeight();
-        this.cache = new Double[len];
-        for (int i = 0; i < len; i++) {
-            cache[i] = (double) i;
-        }
-
         this.minX = other.getMinX().doubleValue();
         this.maxX = other.getMaxX().doubleValue();
         this.minY = other.getMinY().doubleValue();
@@ -44,11 +43,31 @@ public class MandelDoubleState extends MandelStateAbstract<Double> {
         this.centerX = other.getCenterX().doubleValue();
         this.centerY = other.getCenterY().doubleValue();
         this.savedMaxX = other.getSavedMaxX().doubleValue();
+        mapCoordinates(other.getMandelWidth(), other.getMandelHeight());
+    }
+
+    /**
+     * @return real coordinate of every column of the view, not to be modified
+     */
+    public double[] getRealCoordinates() {
+        return realCoordinates;
+    }
+
+    /**
+     * @return imaginary coordinate of every row of the view, not to be modified
+     */
+    public double[] getImaginaryCoordinates() {
+        return imaginaryCoordinates;
     }
 
     @Override
-    public Double cachedValue(int i) {
-        return cache[i];
+    protected void viewportChanged() {
+        mapCoordinates(getMandelWidth(), getMandelHeight());
+    }
+
+    private void mapCoordinates(int width, int height) {
+        this.realCoordinates = ComplexMapping.mapComplex(width, minX, maxX);
+        this.imaginaryCoordinates = ComplexMapping.mapComplex(height, minY, maxY);
     }
 
     @Override
@@ -81,6 +100,11 @@ public class MandelDoubleState extends MandelStateAbstract<Double> {
         return maxY;
     }
 
+    @Override
+    public double getPixelSpacing() {
+        return (maxX - minX) / getMandelWidth();
+    }
+
     @Override
     public void setCenter(int x, int y) {
         this.centerX = ComplexMapping.mapComplex(x, getMandelWidth(), minX, maxX);
@@ -88,6 +112,27 @@ public class MandelDoubleState extends MandelStateAbstract<Double> {
         calcZoom(1);
     }
 
+    /**
+     * Moves the bounds by the offsets and the coordinate tables along with them, the columns and rows still in view keep
+     * their coordinates exactly.
+     */
+    @Override
+    public boolean pan(int dx, int dy) {
+        final double[] columns = getRealCoordinates();
+        final double[] rows = getImaginaryCoordinates();
+        final double shiftX = (double) dx / getMandelWidth() * (maxX - minX);
+        final double shiftY = (double) dy / getMandelHeight() * (maxY - minY);
+        this.minX += shiftX;
+        this.maxX += shiftX;
+        this.centerX += shiftX;
+        this.minY += shiftY;
+        this.maxY += shiftY;
+        this.centerY += shiftY;
+        this.realCoordinates = ComplexMapping.shift(columns, dx, minX, maxX);
+        this.imaginaryCoordinates = ComplexMapping.shift(rows, dy, minY, maxY);
+        return true;
+    }
+
     @Override
     public void resetCoordinates() {
         this.minX = MIN_X;
@@ -121,6 +166,7 @@ public class MandelDoubleState extends MandelStateAbstract<Double> {
         this.maxX = centerX + rangeX / 2;
         this.minY = centerY - rangeY / 2;
         this.maxY = centerY + rangeY / 2;
+        viewportChanged();
     }
 
     public double getSavedMaxX() {
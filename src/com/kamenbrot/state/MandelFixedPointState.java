@@ -0,0 +1,195 @@
+package com.kamenbrot.state;
+
+import com.kamenbrot.fractals.FixedPoint;
+import com.kamenbrot.fractals.FloatExp;
+
+import java.awt.Color;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Map;
+
+/**
+ * Last resort state iterating every pixel at full precision with {@link FixedPoint}. Slower than perturbation but free
+ * of its glitches. The number of limbs follows the zoom depth so each pixel only pays for the bits it needs.
+ */
+public class MandelFixedPointState extends MandelStateAbstract<FixedPoint> {
+
+    private static final FloatExp RANGE_X = FloatExp.valueOf(GenericMandelState.MAX_X - GenericMandelState.MIN_X);
+    private static final FloatExp RANGE_Y = FloatExp.valueOf(GenericMandelState.MAX_Y - GenericMandelState.MIN_Y);
+
+    private int fractionLimbs = FixedPoint.fractionLimbsFor(0);
+    private FixedPoint centerX = new FixedPoint(fractionLimbs);
+    private FixedPoint centerY = new FixedPoint(fractionLimbs);
+    private FloatExp rangeX = RANGE_X;
+    private FloatExp rangeY = RANGE_Y;
+    private FixedPoint pixelSpacingX;
+    private FixedPoint pixelSpacingY;
+    private FixedPoint halfPixelSpacingX;
+    private FixedPoint halfPixelSpacingY;
+    private BigDecimal savedMaxX;
+
+    public MandelFixedPointState(int maxIterations, int mandelWidth, int mandelHeight, Map<Integer, Color> colorCache) {
+        super(maxIterations, mandelWidth, mandelHeight, colorCache);
+        updateSpacing(mandelWidth, mandelHeight);
+        this.savedMaxX = maxX();
+    }
+
+    public MandelFixedPointState(PanelState panelState, Map<Integer, Color> colorCache) {
+        this(panelState.getMaxIterations(), panelState.getWidth(), panelState.getHeight(), colorCache);
+    }
+
+    public MandelFixedPointState(MandelDoubleDoubleState other) {
+        super(other);
+        this.rangeX = FloatExp.valueOf(other.getMaxX().sub(other.getMinX()).toBigDecimal());
+        this.rangeY = FloatExp.valueOf(other.getMaxY().sub(other.getMinY()).toBigDecimal());
+        updateSpacing(other.getMandelWidth(), other.getMandelHeight());
+        setCenter(other.getCenterX().toBigDecimal(), other.getCenterY().toBigDecimal());
+        this.savedMaxX = other.getSavedMaxX().toBigDecimal();
+    }
+
+    public MandelFixedPointState(MandelPerturbationState other) {
+        super(other);
+        this.rangeX = FloatExp.valueOf(other.getMaxX().subtract(other.getMinX()));
+        this.rangeY = FloatExp.valueOf(other.getMaxY().subtract(other.getMinY()));
+        updateSpacing(other.getMandelWidth(), other.getMandelHeight());
+        setCenter(other.getCenterX(), other.getCenterY());
+        this.savedMaxX = other.getSavedMaxX();
+    }
+
+    @Override
+    public FixedPoint getCenterX() {
+        return centerX;
+    }
+
+    @Override
+    public FixedPoint getCenterY() {
+        return centerY;
+    }
+
+    @Override
+    public FixedPoint getMinX() {
+        return FixedPoint.valueOf(centerX.toBigDecimal().subtract(rangeX.scalb(-1).toBigDecimal()), fractionLimbs);
+    }
+
+    @Override
+    public FixedPoint getMinY() {
+        return FixedPoint.valueOf(centerY.toBigDecimal().subtract(rangeY.scalb(-1).toBigDecimal()), fractionLimbs);
+    }
+
+    @Override
+    public FixedPoint getMaxX() {
+        return FixedPoint.valueOf(maxX(), fractionLimbs);
+    }
+
+    @Override
+    public FixedPoint getMaxY() {
+        return FixedPoint.valueOf(centerY.toBigDecimal().add(rangeY.scalb(-1).toBigDecimal()), fractionLimbs);
+    }
+
+    public FloatExp getRangeX() {
+        return rangeX;
+    }
+
+    public FloatExp getRangeY() {
+        return rangeY;
+    }
+
+    @Override
+    public double getPixelSpacing() {
+        return rangeX.div(FloatExp.valueOf(getMandelWidth())).doubleValue();
+    }
+
+    public FixedPoint getPixelSpacingX() {
+        return pixelSpacingX;
+    }
+
+    public FixedPoint getPixelSpacingY() {
+        return pixelSpacingY;
+    }
+
+    /**
+     * @return half the pixel spacing, pixels sit at odd multiples of it from the centre on even view sizes
+     */
+    public FixedPoint getHalfPixelSpacingX() {
+        return halfPixelSpacingX;
+    }
+
+    public FixedPoint getHalfPixelSpacingY() {
+        return halfPixelSpacingY;
+    }
+
+    @Override
+    public void setCenter(int x, int y) {
+        // offsets in half pixels from the middle of the view, which falls between two pixels on even sizes
+        final FixedPoint newCenterX = new FixedPoint(fractionLimbs).mul(halfPixelSpacingX, 2L * x - getMandelWidth());
+        final FixedPoint newCenterY = new FixedPoint(fractionLimbs).mul(halfPixelSpacingY, 2L * y - getMandelHeight());
+        this.centerX = newCenterX.add(newCenterX, centerX);
+        this.centerY = newCenterY.add(newCenterY, centerY);
+    }
+
+    /**
+     * Sets the centre at the precision of the current spacing.
+     */
+    private void setCenter(BigDecimal x, BigDecimal y) {
+        this.centerX = FixedPoint.valueOf(x, fractionLimbs);
+        this.centerY = FixedPoint.valueOf(y, fractionLimbs);
+    }
+
+    @Override
+    public void resetCoordinates() {
+        this.rangeX = RANGE_X;
+        this.rangeY = RANGE_Y;
+        calcZoom(super.setZoom(1));
+    }
+
+    @Override
+    public void saveCurrentZoom() {
+        this.savedMaxX = maxX();
+    }
+
+    @Override
+    public boolean isZoomInReached() {
+        return savedMaxX.compareTo(maxX()) >= 0;
+    }
+
+    @Override
+    public boolean isZoomOutReached() {
+        return savedMaxX.compareTo(maxX()) <= 0;
+    }
+
+    @Override
+    protected void calcZoom(double z) {
+        final FloatExp scale = FloatExp.valueOf(z);
+        this.rangeX = rangeX.mul(scale);
+        this.rangeY = rangeY.mul(scale);
+        updateSpacing(getMandelWidth(), getMandelHeight());
+    }
+
+    /**
+     * Derives the pixel spacing and the fraction limbs resolving it from the ranges, the centre is carried over to the
+     * new limbs.
+     */
+    private void updateSpacing(int width, int height) {
+        final FloatExp spacingX = rangeX.div(FloatExp.valueOf(width));
+        final FloatExp spacingY = rangeY.div(FloatExp.valueOf(height));
+
+        final int newFractionLimbs = FixedPoint.fractionLimbsFor(spacingX.getExponent());
+        if (newFractionLimbs != fractionLimbs) {
+            this.fractionLimbs = newFractionLimbs;
+            this.centerX = centerX.withFractionLimbs(newFractionLimbs);
+            this.centerY = centerY.withFractionLimbs(newFractionLimbs);
+        }
+        this.pixelSpacingX = FixedPoint.valueOf(spacingX.toBigDecimal(), fractionLimbs);
+        this.pixelSpacingY = FixedPoint.valueOf(spacingY.toBigDecimal(), fractionLimbs);
+        this.halfPixelSpacingX = FixedPoint.valueOf(spacingX.scalb(-1).toBigDecimal(), fractionLimbs);
+        this.halfPixelSpacingY = FixedPoint.valueOf(spacingY.scalb(-1).toBigDecimal(), fractionLimbs);
+    }
+
+    private BigDecimal maxX() {
+        return centerX.toBigDecimal().add(rangeX.scalb(-1).toBigDecimal(), MathContext.UNLIMITED);
+    }
+
+    public BigDecimal getSavedMaxX() {
+        return savedMaxX;
+    }
+}
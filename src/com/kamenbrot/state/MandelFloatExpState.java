@@ -0,0 +1,198 @@
+package com.kamenbrot.state;
+
+import com.kamenbrot.fractals.FloatExp;
+import com.kamenbrot.fractals.mandelbrot.CpuMandelbrot;
+import com.kamenbrot.fractals.mandelbrot.ReferenceOrbit;
+
+import java.awt.Color;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Map;
+
+/**
+ * Perturbation state for zooms past the double range. The view centre stays in {@link BigDecimal} for the
+ * {@link ReferenceOrbit} while the view size and the pixel deltas are {@link FloatExp} so they do not underflow once
+ * the pixel spacing drops below 1e-308.
+ */
+public class MandelFloatExpState extends MandelStateAbstract<FloatExp> {
+
+    /**
+     * Significant digits on top of the ones needed to resolve a pixel
+     */
+    private static final int GUARD_DIGITS = 20;
+    private static final int MIN_DIGITS = 34;
+
+    private static final FloatExp RANGE_X = FloatExp.valueOf(GenericMandelState.MAX_X - GenericMandelState.MIN_X);
+    private static final FloatExp RANGE_Y = FloatExp.valueOf(GenericMandelState.MAX_Y - GenericMandelState.MIN_Y);
+
+    private BigDecimal centerX = BigDecimal.ZERO;
+    private BigDecimal centerY = BigDecimal.ZERO;
+    private FloatExp rangeX = RANGE_X;
+    private FloatExp rangeY = RANGE_Y;
+    private MathContext mc = new MathContext(MIN_DIGITS, RoundingMode.HALF_EVEN);
+    private BigDecimal savedMaxX = maxX();
+    private volatile ReferenceOrbit referenceOrbit;
+
+    public MandelFloatExpState(int maxIterations, int mandelWidth, int mandelHeight, Map<Integer, Color> colorCache) {
+        super(maxIterations, mandelWidth, mandelHeight, colorCache);
+    }
+
+    public MandelFloatExpState(PanelState panelState, Map<Integer, Color> colorCache) {
+        this(panelState.getMaxIterations(), panelState.getWidth(), panelState.getHeight(), colorCache);
+    }
+
+    public MandelFloatExpState(MandelPerturbationState other) {
+        super(other);
+        this.centerX = other.getCenterX();
+        this.centerY = other.getCenterY();
+        this.rangeX = FloatExp.valueOf(other.getMaxX().subtract(other.getMinX()));
+        this.rangeY = FloatExp.valueOf(other.getMaxY().subtract(other.getMinY()));
+        this.savedMaxX = other.getSavedMaxX();
+        this.mc = mathContext(rangeX.div(FloatExp.valueOf(other.getMandelWidth())));
+    }
+
+    @Override
+    public FloatExp getCenterX() {
+        return FloatExp.valueOf(centerX);
+    }
+
+    @Override
+    public FloatExp getCenterY() {
+        return FloatExp.valueOf(centerY);
+    }
+
+    @Override
+    public FloatExp getMinX() {
+        return getCenterX().sub(rangeX.scalb(-1));
+    }
+
+    @Override
+    public FloatExp getMinY() {
+        return getCenterY().sub(rangeY.scalb(-1));
+    }
+
+    @Override
+    public FloatExp getMaxX() {
+        return getCenterX().add(rangeX.scalb(-1));
+    }
+
+    @Override
+    public FloatExp getMaxY() {
+        return getCenterY().add(rangeY.scalb(-1));
+    }
+
+    /**
+     * @return exact real part of the view centre
+     */
+    public BigDecimal getReferenceX() {
+        return centerX;
+    }
+
+    /**
+     * @return exact imaginary part of the view centre
+     */
+    public BigDecimal getReferenceY() {
+        return centerY;
+    }
+
+    public FloatExp getRangeX() {
+        return rangeX;
+    }
+
+    public FloatExp getRangeY() {
+        return rangeY;
+    }
+
+    /**
+     * @return the pixel spacing rounded to double, zero past the double range
+     */
+    @Override
+    public double getPixelSpacing() {
+        return getPixelSpacingX().doubleValue();
+    }
+
+    public FloatExp getPixelSpacingX() {
+        return rangeX.div(FloatExp.valueOf(getMandelWidth()));
+    }
+
+    public FloatExp getPixelSpacingY() {
+        return rangeY.div(FloatExp.valueOf(getMandelHeight()));
+    }
+
+    /**
+     * The orbit of the view centre, computed on first use after every viewport change.
+     *
+     * @return reference orbit of the current viewport
+     */
+    public ReferenceOrbit getReferenceOrbit() {
+        ReferenceOrbit orbit = referenceOrbit;
+        if (orbit == null) {
+            synchronized (this) {
+                orbit = referenceOrbit;
+                if (orbit == null) {
+                    orbit = referenceOrbit = CpuMandelbrot.referenceOrbit(centerX, centerY, getMaxIterations(), mc);
+                }
+            }
+        }
+        return orbit;
+    }
+
+    @Override
+    public void setCenter(int x, int y) {
+        final FloatExp dx = getPixelSpacingX().mul(x - getMandelWidth() * 0.5);
+        final FloatExp dy = getPixelSpacingY().mul(y - getMandelHeight() * 0.5);
+        this.centerX = centerX.add(dx.toBigDecimal(), mc);
+        this.centerY = centerY.add(dy.toBigDecimal(), mc);
+        calcZoom(1);
+    }
+
+    @Override
+    public void resetCoordinates() {
+        this.rangeX = RANGE_X;
+        this.rangeY = RANGE_Y;
+        calcZoom(super.setZoom(1));
+    }
+
+    @Override
+    public void saveCurrentZoom() {
+        this.savedMaxX = maxX();
+    }
+
+    @Override
+    public boolean isZoomInReached() {
+        return savedMaxX.compareTo(maxX()) >= 0;
+    }
+
+    @Override
+    public boolean isZoomOutReached() {
+        return savedMaxX.compareTo(maxX()) <= 0;
+    }
+
+    @Override
+    protected void calcZoom(double z) {
+        final FloatExp scale = FloatExp.valueOf(z);
+        this.rangeX = rangeX.mul(scale);
+        this.rangeY = rangeY.mul(scale);
+        this.mc = mathContext(getPixelSpacingX());
+        this.referenceOrbit = null;
+    }
+
+    /**
+     * Enough significant digits to tell apart two adjacent pixels around the centre.
+     *
+     * @param pixelSpacing width of a pixel
+     */
+    private static MathContext mathContext(FloatExp pixelSpacing) {
+        final long exponent = pixelSpacing.decimalExponent();
+        return new MathContext((int) Math.max(MIN_DIGITS, GUARD_DIGITS - exponent), RoundingMode.HALF_EVEN);
+    }
+
+    private BigDecimal maxX() {
+        return centerX.add(rangeX.scalb(-1).toBigDecimal(), mc);
+    }
+
+    public BigDecimal getSavedMaxX() {
+        return savedMaxX;
+    }
+}
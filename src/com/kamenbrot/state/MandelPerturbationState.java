@@ -0,0 +1,218 @@
+package com.kamenbrot.state;
+
+import com.kamenbrot.fractals.ComplexMapping;
+import com.kamenbrot.fractals.mandelbrot.CpuMandelbrot;
+import com.kamenbrot.fractals.mandelbrot.ReferenceOrbit;
+
+import java.awt.Color;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Map;
+
+/**
+ * Deep zoom state. Coordinates are kept in {@link BigDecimal} with a precision that follows the zoom depth, the view
+ * centre is iterated once per viewport as the {@link ReferenceOrbit} and every pixel only iterates its delta from it.
+ */
+public class MandelPerturbationState extends MandelStateAbstract<BigDecimal> {
+
+    /**
+     * Significant digits on top of the ones needed to resolve a pixel
+     */
+    private static final int GUARD_DIGITS = 20;
+    private static final int MIN_DIGITS = 34;
+
+    private static final BigDecimal MIN_X = BigDecimal.valueOf(GenericMandelState.MIN_X);
+    private static final BigDecimal MAX_X = BigDecimal.valueOf(GenericMandelState.MAX_X);
+    private static final BigDecimal MIN_Y = BigDecimal.valueOf(GenericMandelState.MIN_Y);
+    private static final BigDecimal MAX_Y = BigDecimal.valueOf(GenericMandelState.MAX_Y);
+
+    private BigDecimal minX = MIN_X;
+    private BigDecimal maxX = MAX_X;
+    private BigDecimal minY = MIN_Y;
+    private BigDecimal maxY = MAX_Y;
+    private BigDecimal centerX = BigDecimal.ZERO;
+    private BigDecimal centerY = BigDecimal.ZERO;
+    private BigDecimal savedMaxX = maxX;
+    private double rangeX = GenericMandelState.MAX_X - GenericMandelState.MIN_X;
+    private double rangeY = GenericMandelState.MAX_Y - GenericMandelState.MIN_Y;
+    private MathContext mc = new MathContext(MIN_DIGITS, RoundingMode.HALF_EVEN);
+    private volatile ReferenceOrbit referenceOrbit;
+
+    public MandelPerturbationState(int maxIterations, int mandelWidth, int mandelHeight, Map<Integer, Color> colorCache) {
+        super(maxIterations, mandelWidth, mandelHeight, colorCache);
+    }
+
+    public MandelPerturbationState(PanelState panelState, Map<Integer, Color> colorCache) {
+        this(panelState.getMaxIterations(), panelState.getWidth(), panelState.getHeight(), colorCache);
+    }
+
+    public MandelPerturbationState(MandelDoubleDoubleState other) {
+        super(other);
+        this.minX = other.getMinX().toBigDecimal();
+        this.maxX = other.getMaxX().toBigDecimal();
+        this.minY = other.getMinY().toBigDecimal();
+        this.maxY = other.getMaxY().toBigDecimal();
+        this.centerX = other.getCenterX().toBigDecimal();
+        this.centerY = other.getCenterY().toBigDecimal();
+        this.savedMaxX = other.getSavedMaxX().toBigDecimal();
+        this.rangeX = maxX.subtract(minX).doubleValue();
+        this.rangeY = maxY.subtract(minY).doubleValue();
+        this.mc = mathContext(maxX.subtract(minX), other.getMandelWidth());
+    }
+
+    public MandelPerturbationState(MandelFloatExpState other) {
+        super(other);
+        final BigDecimal halfRangeX = other.getRangeX().scalb(-1).toBigDecimal();
+        final BigDecimal halfRangeY = other.getRangeY().scalb(-1).toBigDecimal();
+        this.mc = mathContext(halfRangeX, other.getMandelWidth());
+        this.centerX = other.getReferenceX();
+        this.centerY = other.getReferenceY();
+        this.minX = centerX.subtract(halfRangeX, mc);
+        this.maxX = centerX.add(halfRangeX, mc);
+        this.minY = centerY.subtract(halfRangeY, mc);
+        this.maxY = centerY.add(halfRangeY, mc);
+        this.savedMaxX = other.getSavedMaxX();
+        this.rangeX = other.getRangeX().doubleValue();
+        this.rangeY = other.getRangeY().doubleValue();
+    }
+
+    public MandelPerturbationState(MandelFixedPointState other) {
+        super(other);
+        this.minX = other.getMinX().toBigDecimal();
+        this.maxX = other.getMaxX().toBigDecimal();
+        this.minY = other.getMinY().toBigDecimal();
+        this.maxY = other.getMaxY().toBigDecimal();
+        this.centerX = other.getCenterX().toBigDecimal();
+        this.centerY = other.getCenterY().toBigDecimal();
+        this.savedMaxX = other.getSavedMaxX();
+        this.rangeX = other.getRangeX().doubleValue();
+        this.rangeY = other.getRangeY().doubleValue();
+        this.mc = mathContext(maxX.subtract(minX), other.getMandelWidth());
+    }
+
+    @Override
+    public BigDecimal getCenterX() {
+        return centerX;
+    }
+
+    @Override
+    public BigDecimal getCenterY() {
+        return centerY;
+    }
+
+    @Override
+    public BigDecimal getMinX() {
+        return minX;
+    }
+
+    @Override
+    public BigDecimal getMinY() {
+        return minY;
+    }
+
+    @Override
+    public BigDecimal getMaxX() {
+        return maxX;
+    }
+
+    @Override
+    public BigDecimal getMaxY() {
+        return maxY;
+    }
+
+    @Override
+    public double getPixelSpacing() {
+        return getPixelSpacingX();
+    }
+
+    public double getPixelSpacingX() {
+        return rangeX / getMandelWidth();
+    }
+
+    public double getPixelSpacingY() {
+        return rangeY / getMandelHeight();
+    }
+
+    /**
+     * The orbit of the view centre, computed on first use after every viewport change.
+     *
+     * @return reference orbit of the current viewport
+     */
+    public ReferenceOrbit getReferenceOrbit() {
+        ReferenceOrbit orbit = referenceOrbit;
+        if (orbit == null) {
+            synchronized (this) {
+                orbit = referenceOrbit;
+                if (orbit == null) {
+                    orbit = referenceOrbit = CpuMandelbrot.referenceOrbit(centerX, centerY, getMaxIterations(), mc);
+                }
+            }
+        }
+        return orbit;
+    }
+
+    @Override
+    public void setCenter(int x, int y) {
+        this.centerX = ComplexMapping.mapComplex(BigDecimal.valueOf(x), BigDecimal.valueOf(getMandelWidth()), minX, maxX, mc);
+        this.centerY = ComplexMapping.mapComplex(BigDecimal.valueOf(y), BigDecimal.valueOf(getMandelHeight()), minY, maxY, mc);
+        calcZoom(1);
+    }
+
+    @Override
+    public void resetCoordinates() {
+        this.minX = MIN_X;
+        this.maxX = MAX_X;
+        this.minY = MIN_Y;
+        this.maxY = MAX_Y;
+        calcZoom(super.setZoom(1));
+    }
+
+    @Override
+    public void saveCurrentZoom() {
+        this.savedMaxX = maxX;
+    }
+
+    @Override
+    public boolean isZoomInReached() {
+        return savedMaxX.compareTo(maxX) >= 0;
+    }
+
+    @Override
+    public boolean isZoomOutReached() {
+        return savedMaxX.compareTo(maxX) <= 0;
+    }
+
+    @Override
+    protected void calcZoom(double z) {
+        final BigDecimal scale = BigDecimal.valueOf(z);
+        final BigDecimal halfRangeX = maxX.subtract(minX, mc).multiply(scale, mc).divide(BigDecimal.TWO, mc);
+        final BigDecimal halfRangeY = maxY.subtract(minY, mc).multiply(scale, mc).divide(BigDecimal.TWO, mc);
+        this.mc = mathContext(halfRangeX, getMandelWidth());
+
+        this.minX = centerX.subtract(halfRangeX, mc);
+        this.maxX = centerX.add(halfRangeX, mc);
+        this.minY = centerY.subtract(halfRangeY, mc);
+        this.maxY = centerY.add(halfRangeY, mc);
+        this.rangeX = halfRangeX.doubleValue() * 2;
+        this.rangeY = halfRangeY.doubleValue() * 2;
+        this.referenceOrbit = null;
+    }
+
+    /**
+     * Enough significant digits to tell apart two adjacent pixels around the centre.
+     *
+     * @param range width of the view
+     * @param width  width of the view in pixels
+     */
+    private static MathContext mathContext(BigDecimal range, int width) {
+        final BigDecimal pixelSpacing = range.divide(BigDecimal.valueOf(width), MathContext.DECIMAL64);
+        // decimal exponent of the most significant digit
+        final int exponent = pixelSpacing.precision() - pixelSpacing.scale() - 1;
+        return new MathContext(Math.max(MIN_DIGITS, GUARD_DIGITS - exponent), RoundingMode.HALF_EVEN);
+    }
+
+    public BigDecimal getSavedMaxX() {
+        return savedMaxX;
+    }
+}
@@ -1,5 +1,7 @@
 package com.kamenbrot.state;
 
+import com.kamenbrot.fractals.FractalFormula;
+
 import java.awt.Color;
 import java.util.Map;
 
@@ -13,22 +15,63 @@ public interface MandelState {
   double getCurrentZoom();
   double getZoomFactor();
 
+  /**
+   * @return distance between two horizontally adjacent pixels in the complex plane
+   */
+  double getPixelSpacing();
+
   void saveCurrentZoom();
   boolean isZoomInReached();
   boolean isZoomOutReached();
 
   void setCenter(int x, int y);
 
+  /**
+   * Moves the view by whole pixels at the same scale, a positive dx brings in what was right of the view.
+   *
+   * @return whether the pixels still in view moved by exactly that many pixels with their coordinates unchanged, their
+   * iterations can then be kept
+   */
+  boolean pan(int dx, int dy);
+
   boolean isJuliaToggled();
   boolean isSaveToggled();
   boolean isPerformanceToggled();
   boolean isSmoothToggled();
+  boolean isSubdivisionToggled();
+  boolean isDistanceToggled();
+
+  /**
+   * @return whether frames keep their unescaped pixels resumable and are deepened over several iteration slices
+   */
+  boolean isProgressiveToggled();
+
+  /**
+   * @return whether the interior of a frame is predicted from the last one and only verified on its boundary
+   */
+  boolean isPredictionToggled();
+
+  /**
+   * @return whether the view is being navigated and frames are only previews until the input settles
+   */
+  boolean isInteractive();
+  void setInteractive(boolean interactive);
+
+  /**
+   * @return formula iterated for the pixels of the view
+   */
+  FractalFormula getFormula();
+  void setFormula(FractalFormula formula);
 
   default int  maxSkipped() {return 2;}
 
   void toggleSmooth();
   void toggleJulia();
   void toggleSave();
+  void toggleSubdivision();
+  void toggleDistance();
+  void toggleProgressive();
+  void togglePrediction();
 
   int getMandelHeight();
   int getMandelWidth();
@@ -38,6 +81,7 @@ public interface MandelState {
 
   void resetCoordinates();
   int getMaxIterations();
+  void setMaxIterations(int maxIterations);
 
   void clearColorCache();
   Map<Integer, Color> getColorCache();
@@ -1,5 +1,8 @@
 package com.kamenbrot.state;
 
+import com.kamenbrot.fractals.FractalFormula;
+import com.kamenbrot.fractals.mandelbrot.MandelbrotFormula;
+
 import java.awt.Color;
 import java.util.Map;
 
@@ -12,6 +15,12 @@ public abstract class MandelStateAbstract<T extends Number> implements GenericMa
     private boolean saveToggle = false;
     private boolean performanceToggle = false;
     private boolean smoothToggle = false;
+    private boolean subdivisionToggle = false;
+    private boolean distanceToggle = false;
+    private boolean progressiveToggle = false;
+    private boolean predictionToggle = false;
+    private boolean interactive = false;
+    private FractalFormula formula = MandelbrotFormula.INSTANCE;
     private int mandelWidth;
     private int mandelHeight;
     private int maxIterations;
@@ -31,6 +40,12 @@ public abstract class MandelStateAbstract<T extends Number> implements GenericMa
         this.saveToggle = other.saveToggle;
         this.performanceToggle = other.performanceToggle;
         this.smoothToggle = other.smoothToggle;
+        this.subdivisionToggle = other.subdivisionToggle;
+        this.distanceToggle = other.distanceToggle;
+        this.progressiveToggle = other.progressiveToggle;
+        this.predictionToggle = other.predictionToggle;
+        this.interactive = other.interactive;
+        this.formula = other.formula;
         this.mandelWidth = other.mandelWidth;
         this.mandelHeight = other.mandelHeight;
         this.maxIterations = other.maxIterations;
@@ -68,6 +83,46 @@ public abstract class MandelStateAbstract<T extends Number> implements GenericMa
         return smoothToggle;
     }
 
+    @Override
+    public boolean isSubdivisionToggled() {
+        return subdivisionToggle;
+    }
+
+    @Override
+    public boolean isDistanceToggled() {
+        return distanceToggle;
+    }
+
+    @Override
+    public boolean isProgressiveToggled() {
+        return progressiveToggle;
+    }
+
+    @Override
+    public boolean isPredictionToggled() {
+        return predictionToggle;
+    }
+
+    @Override
+    public boolean isInteractive() {
+        return interactive;
+    }
+
+    @Override
+    public void setInteractive(boolean interactive) {
+        this.interactive = interactive;
+    }
+
+    @Override
+    public FractalFormula getFormula() {
+        return formula;
+    }
+
+    @Override
+    public void setFormula(FractalFormula formula) {
+        this.formula = formula;
+    }
+
     @Override
     public void toggleJulia() {
         this.juliaToggle = !juliaToggle;
@@ -83,6 +138,26 @@ public abstract class MandelStateAbstract<T extends Number> implements GenericMa
         this.smoothToggle = !smoothToggle;
     }
 
+    @Override
+    public void toggleSubdivision() {
+        this.subdivisionToggle = !subdivisionToggle;
+    }
+
+    @Override
+    public void toggleDistance() {
+        this.distanceToggle = !distanceToggle;
+    }
+
+    @Override
+    public void toggleProgressive() {
+        this.progressiveToggle = !progressiveToggle;
+    }
+
+    @Override
+    public void togglePrediction() {
+        this.predictionToggle = !predictionToggle;
+    }
+
     @Override
     public int getMandelHeight() {
         return mandelHeight;
@@ -101,11 +176,28 @@ public abstract class MandelStateAbstract<T extends Number> implements GenericMa
     @Override
     public void setMandelWidth(int mandelWidth) {
         this.mandelWidth = mandelWidth;
+        viewportChanged();
     }
 
     @Override
     public void setMandelHeight(int mandelHeight) {
         this.mandelHeight = mandelHeight;
+        viewportChanged();
+    }
+
+    /**
+     * Centres the view on the pixel the offset away from the centre, its coordinates are mapped again.
+     */
+    @Override
+    public boolean pan(int dx, int dy) {
+        setCenter(getMandelWidth() / 2 + dx, getMandelHeight() / 2 + dy);
+        return false;
+    }
+
+    /**
+     * Called whenever the bounds or the size of the view change, for dropping what was derived from them
+     */
+    protected void viewportChanged() {
     }
 
     @Override
@@ -113,6 +205,14 @@ public abstract class MandelStateAbstract<T extends Number> implements GenericMa
         return maxIterations;
     }
 
+    @Override
+    public void setMaxIterations(int maxIterations) {
+        if (maxIterations == this.maxIterations) return;
+        this.maxIterations = maxIterations;
+        // smooth colours are relative to max iterations
+        colorCache.clear();
+    }
+
     @Override
     public void incrementZoomFactor() {
         this.zoomFactor = Math.min(0.95, zoomFactor + ZOOM_FACTOR_UNIT);
@@ -0,0 +1,142 @@
+package com.kamenbrot.state;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Picks the cheapest state that can still tell adjacent pixels apart from the actual pixel spacing of the view. Tiers
+ * are ordered from the cheapest to the most precise and a state only ever converts to a neighbouring tier, so a jump
+ * over several tiers steps through all of them.
+ * <p>
+ * Moving to a finer tier happens as soon as the current one stops resolving the pixels, moving back only once the
+ * coarser tier resolves them with {@link #hysteresis} to spare, so zooming back and forth around a threshold does not
+ * flip the state every frame.
+ */
+public final class PrecisionPolicy {
+
+    /**
+     * A float keeps 23 bits, the same 8 bits of margin leave previews 2^-16
+     */
+    public static final double FLOAT_RELATIVE_SPACING = 0x1.0p-16;
+    /**
+     * A double keeps 52 bits, pixels closer than 2^-44 of the coordinates would only differ in their last 8 bits
+     */
+    public static final double DOUBLE_RELATIVE_SPACING = 0x1.0p-44;
+    /**
+     * Same 8 bits of margin on the 104 bits of a double-double
+     */
+    public static final double DOUBLE_DOUBLE_RELATIVE_SPACING = 0x1.0p-96;
+    /**
+     * Perturbation deltas are doubles, they have to stay well clear of the subnormal range
+     */
+    public static final double PERTURBATION_ABSOLUTE_SPACING = 1e-280;
+    public static final double DEFAULT_HYSTERESIS = 2.0;
+
+    /**
+     * A precision tier.
+     *
+     * @param type             state class of the tier
+     * @param relativeSpacing  smallest pixel spacing relative to the coordinate magnitude the tier resolves
+     * @param absoluteSpacing  smallest pixel spacing the tier resolves
+     * @param toFiner          converts a state of this tier to the next finer tier, unused for the last tier
+     * @param toCoarser        converts a state of this tier to the next coarser tier, unused for the first tier
+     */
+    public record Tier(Class<? extends MandelState> type, double relativeSpacing, double absoluteSpacing,
+                       UnaryOperator<MandelState> toFiner, UnaryOperator<MandelState> toCoarser) {
+
+        boolean resolves(double pixelSpacing, double magnitude, double margin) {
+            return pixelSpacing >= margin * Math.max(absoluteSpacing, magnitude * relativeSpacing);
+        }
+    }
+
+    public static final PrecisionPolicy DEFAULT = new PrecisionPolicy(List.of(
+            new Tier(MandelDoubleState.class, DOUBLE_RELATIVE_SPACING, 0.0,
+                    s -> new MandelDoubleDoubleState((MandelDoubleState) s), null),
+            new Tier(MandelDoubleDoubleState.class, DOUBLE_DOUBLE_RELATIVE_SPACING, 0.0,
+                    s -> new MandelPerturbationState((MandelDoubleDoubleState) s), s -> new MandelDoubleState((MandelDoubleDoubleState) s)),
+            new Tier(MandelPerturbationState.class, 0.0, PERTURBATION_ABSOLUTE_SPACING,
+                    s -> new MandelFloatExpState((MandelPerturbationState) s), s -> new MandelDoubleDoubleState((MandelPerturbationState) s)),
+            new Tier(MandelFloatExpState.class, 0.0, 0.0,
+                    null, s -> new MandelPerturbationState((MandelFloatExpState) s))
+    ), DEFAULT_HYSTERESIS);
+
+    /**
+     * Iterates every pixel at full precision past double-double instead of perturbing around a reference
+     */
+    public static final PrecisionPolicy EXACT = new PrecisionPolicy(List.of(
+            new Tier(MandelDoubleState.class, DOUBLE_RELATIVE_SPACING, 0.0,
+                    s -> new MandelDoubleDoubleState((MandelDoubleState) s), null),
+            new Tier(MandelDoubleDoubleState.class, DOUBLE_DOUBLE_RELATIVE_SPACING, 0.0,
+                    s -> new MandelFixedPointState((MandelDoubleDoubleState) s), s -> new MandelDoubleState((MandelDoubleDoubleState) s)),
+            new Tier(MandelFixedPointState.class, 0.0, 0.0,
+                    null, s -> new MandelDoubleDoubleState((MandelFixedPointState) s))
+    ), DEFAULT_HYSTERESIS);
+
+    private final List<Tier> tiers;
+    private final double hysteresis;
+
+    /**
+     * @param tiers      tiers from the cheapest to the most precise, the last one has to resolve any spacing
+     * @param hysteresis how many times over a coarser tier has to resolve the pixels before moving back to it
+     */
+    public PrecisionPolicy(List<Tier> tiers, double hysteresis) {
+        if (tiers.isEmpty()) throw new IllegalArgumentException("At least one tier is needed");
+        if (hysteresis < 1.0) throw new IllegalArgumentException("Hysteresis below 1 would oscillate: " + hysteresis);
+        this.tiers = List.copyOf(tiers);
+        this.hysteresis = hysteresis;
+    }
+
+    /**
+     * @param mandelState current state
+     * @return the same state if its tier fits the view or a converted state of the fitting tier
+     */
+    public MandelState select(MandelState mandelState) {
+        int tier = tierOf(mandelState);
+        if (tier < 0) return mandelState;
+        final double pixelSpacing = mandelState.getPixelSpacing();
+        final double magnitude = magnitude(mandelState);
+
+        MandelState state = mandelState;
+        while (tier < tiers.size() - 1 && !tiers.get(tier).resolves(pixelSpacing, magnitude, 1.0)) {
+            state = tiers.get(tier++).toFiner().apply(state);
+        }
+        while (tier > 0 && tiers.get(tier - 1).resolves(pixelSpacing, magnitude, hysteresis)) {
+            state = tiers.get(tier--).toCoarser().apply(state);
+        }
+        return state;
+    }
+
+    /**
+     * @param mandelState current state
+     * @return whether single precision still resolves the pixels of the view, good enough for preview frames
+     */
+    public static boolean resolvesInFloat(MandelState mandelState) {
+        return mandelState.getPixelSpacing() >= magnitude(mandelState) * FLOAT_RELATIVE_SPACING;
+    }
+
+    /**
+     * @param pixelSpacing pixel spacing of the view
+     * @param magnitude    largest absolute coordinate of the part of the view, such as one tile of it
+     * @return whether double still resolves the pixels of that part of the view
+     */
+    public static boolean resolvesInDouble(double pixelSpacing, double magnitude) {
+        return pixelSpacing >= magnitude * DOUBLE_RELATIVE_SPACING;
+    }
+
+    private int tierOf(MandelState mandelState) {
+        for (int i = 0; i < tiers.size(); i++) {
+            if (tiers.get(i).type() == mandelState.getClass()) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return largest absolute coordinate of the view
+     */
+    private static double magnitude(MandelState mandelState) {
+        if (!(mandelState instanceof GenericMandelState<?> state)) return 0.0;
+        return Math.max(
+                Math.max(Math.abs(state.getMinX().doubleValue()), Math.abs(state.getMaxX().doubleValue())),
+                Math.max(Math.abs(state.getMinY().doubleValue()), Math.abs(state.getMaxY().doubleValue())));
+    }
+}
@@ -1,27 +1,36 @@
 package com.kamenbrot.ui;
 
+import com.kamenbrot.fractals.FractalFormula;
+import com.kamenbrot.fractals.expression.CompiledFormula;
 import com.kamenbrot.generators.JuliaBlockImageGenerator;
-import com.kamenbrot.generators.MandelbrotBlockImageGenerator;
+import com.kamenbrot.generators.RenderScheduler;
 import com.kamenbrot.io.MandelOutput;
 import com.kamenbrot.state.ColourState;
 import com.kamenbrot.state.GenericMandelState;
-import com.kamenbrot.state.MandelDoubleDoubleState;
-import com.kamenbrot.state.MandelDoubleState;
 import com.kamenbrot.state.MandelState;
 import com.kamenbrot.state.PaletteState;
 import com.kamenbrot.state.PanelState;
 
+import javax.swing.*;
 import java.awt.Color;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-
-import static com.kamenbrot.MandelMain.PRECISION_SWITCH_ZOOM_LEVEL;
+import java.util.List;
 
 public class MandelKeyListener extends KeyAdapter {
   /**
    * One hundredth of a second (1/100)
    */
   private static final int GIF_FRAME_DELAY_CENTI_SECONDS = 6;
+  private static final int MIN_MAX_ITERATIONS = 64;
+  /**
+   * Iteration counts of preview frames are only exact in float up to here
+   */
+  private static final int MAX_MAX_ITERATIONS = 1 << 24;
+  /**
+   * Pixels the view is panned by per arrow key press
+   */
+  private static final int PAN_PIXELS = 32;
   private final PanelState panelState;
   private final ProperMandelbrotPanel parentComponent;
   private final MiniPanel miniPanel;
@@ -36,11 +45,24 @@ public class MandelKeyListener extends KeyAdapter {
 
   @Override
   public void keyPressed(KeyEvent e) {
+	switch (e.getKeyCode()) {
+	  case KeyEvent.VK_LEFT:
+		parentComponent.pan(-PAN_PIXELS, 0);
+		return;
+	  case KeyEvent.VK_RIGHT:
+		parentComponent.pan(PAN_PIXELS, 0);
+		return;
+	  case KeyEvent.VK_UP:
+		parentComponent.pan(0, -PAN_PIXELS);
+		return;
+	  case KeyEvent.VK_DOWN:
+		parentComponent.pan(0, PAN_PIXELS);
+		return;
+	}
 	switch (e.getKeyChar()) {
 	  case 's':
-		parentComponent.getMandelState().toggleSave();
+		parentComponent.changeView(() -> parentComponent.getMandelState().toggleSave());
 		miniPanel.setVisible(false);
-		parentComponent.setNeedsRender();
 		break;
 	  case 'j':
 		if (parentComponent.getMandelState().isJuliaToggled() || parentComponent.getMandelState().isSaveToggled()) return;
@@ -48,28 +70,91 @@ public class MandelKeyListener extends KeyAdapter {
 		if (miniPanel.isVisible()) miniPanel.setNeedsRender();
 		break;
 	  case 'J':
-		parentComponent.getMandelState().toggleJulia();
-		parentComponent.getMandelState().resetCoordinates();
-		final ColourState colourState = parentComponent.getColorState();
-		if (parentComponent.getMandelState().isJuliaToggled()) {
-		  parentComponent.setImageGenerator(new JuliaBlockImageGenerator<>(parentComponent.getImageGenerator(), (GenericMandelState<?>) parentComponent.getMandelState(), panelState, colourState));
-		  miniPanel.setVisible(false);
-		} else {
-		  parentComponent.setImageGenerator(new MandelbrotBlockImageGenerator(parentComponent.getImageGenerator(), parentComponent.getMandelState(), panelState, colourState));
-		}
+		parentComponent.changeView(() -> {
+		  parentComponent.getMandelState().toggleJulia();
+		  parentComponent.getMandelState().resetCoordinates();
+		  final ColourState colourState = parentComponent.getColorState();
+		  if (parentComponent.getMandelState().isJuliaToggled()) {
+			parentComponent.setImageGenerator(new JuliaBlockImageGenerator<>(parentComponent.getImageGenerator(), (GenericMandelState<?>) parentComponent.getMandelState(), panelState, colourState));
+		  } else {
+			parentComponent.setImageGenerator(parentComponent.newMandelbrotGenerator(parentComponent.getMandelState()));
+			parentComponent.updatePrecision();
+		  }
+		});
+		// the toggle is applied before the next frame, the state still has the julia flag it had before
+		if (!parentComponent.getMandelState().isJuliaToggled()) miniPanel.setVisible(false);
+		break;
+	  case 'm':
+		parentComponent.changeView(() -> {
+		  parentComponent.getMandelState().toggleSubdivision();
+		  if (!parentComponent.getMandelState().isJuliaToggled()) {
+			parentComponent.setImageGenerator(parentComponent.newMandelbrotGenerator(parentComponent.getMandelState()));
+		  }
+		});
+		break;
+	  case 'd':
+		parentComponent.changeView(() -> parentComponent.getMandelState().toggleDistance());
+		break;
+	  case 'I':
+		parentComponent.changeView(() -> parentComponent.getMandelState().toggleProgressive());
+		break;
+	  case 'r':
+		parentComponent.changeView(() -> parentComponent.getMandelState().togglePrediction());
+		break;
+	  case ']':
+		// a frame still showing the same view resumes its unescaped pixels
+		panelState.setMaxIterations(Math.min(MAX_MAX_ITERATIONS, panelState.getMaxIterations() * 2));
+		parentComponent.setNeedsRender();
+		break;
+	  case '[':
+		panelState.setMaxIterations(Math.max(MIN_MAX_ITERATIONS, panelState.getMaxIterations() / 2));
 		parentComponent.setNeedsRender();
 		break;
+	  case 'f': {
+		final MandelState mandelState = parentComponent.getMandelState();
+		if (mandelState.isJuliaToggled()) return;
+		final List<FractalFormula> formulas = FractalFormula.builtIn();
+		final FractalFormula next = formulas.get((formulas.indexOf(mandelState.getFormula()) + 1) % formulas.size());
+		parentComponent.changeView(() -> parentComponent.getMandelState().setFormula(next));
+		break;
+	  }
+	  case 'F': {
+		final MandelState mandelState = parentComponent.getMandelState();
+		if (mandelState.isJuliaToggled()) return;
+		final String source = JOptionPane.showInputDialog(parentComponent, "Formula in z and c, for example abs(z)^2 + c", mandelState.getFormula().getName());
+		if (source == null || source.isBlank()) return;
+		final FractalFormula compiled;
+		try {
+		  compiled = CompiledFormula.compile(source);
+		} catch (IllegalArgumentException ex) {
+		  JOptionPane.showMessageDialog(parentComponent, ex.getMessage(), "Invalid formula", JOptionPane.ERROR_MESSAGE);
+		  return;
+		} catch (LinkageError ex) {
+		  // the generated class failed verification, the formula is reported as not compilable
+		  JOptionPane.showMessageDialog(parentComponent, "Could not load the compiled formula: " + ex, "Invalid formula", JOptionPane.ERROR_MESSAGE);
+		  return;
+		}
+		parentComponent.changeView(() -> parentComponent.getMandelState().setFormula(compiled));
+		break;
+	  }
+	  case 'p':
+		if (parentComponent.getMandelState().isJuliaToggled()) return;
+		parentComponent.changeView(parentComponent::togglePrecisionPolicy);
+		break;
 	  case 'G':
-		MandelOutput.makeGif(panelState.getOutputDir(), panelState.getIdentifier(), GIF_FRAME_DELAY_CENTI_SECONDS);
+		// encoded off the event dispatch thread on the background class so navigating meanwhile stays smooth
+		RenderScheduler.shared().submit(RenderScheduler.Priority.BACKGROUND,
+			() -> MandelOutput.makeGif(panelState.getOutputDir(), panelState.getIdentifier(), GIF_FRAME_DELAY_CENTI_SECONDS));
 		break;
 	  case 'i':
 		parentComponent.setShowInfo(!parentComponent.getShowInfo());
 		parentComponent.setNeedsRender();
 		break;
 	  case 'S':
-		parentComponent.getMandelState().toggleSmooth();
-		parentComponent.getMandelState().clearColorCache();
-		parentComponent.setNeedsRender();
+		parentComponent.changeView(() -> {
+		  parentComponent.getMandelState().toggleSmooth();
+		  parentComponent.getMandelState().clearColorCache();
+		});
 
 		miniPanel.getMiniMandelState().toggleSmooth();
 		miniPanel.getMiniMandelState().clearColorCache();
@@ -78,41 +163,33 @@ public class MandelKeyListener extends KeyAdapter {
 	  case 'g':
 		miniPanel.setVisible(false);
 		while (!parentComponent.getMandelState().isZoomInReached()) {
-          final MandelState state = parentComponent.getMandelState();
-          state.zoomIn(1);
-          if (state instanceof MandelDoubleState cast && state.getCurrentZoom() > PRECISION_SWITCH_ZOOM_LEVEL) {
-              final MandelState newMandelState = new MandelDoubleDoubleState(cast);
-              parentComponent.setMandelState(newMandelState);
-              parentComponent.setImageGenerator(new MandelbrotBlockImageGenerator(parentComponent.getImageGenerator(), newMandelState, parentComponent.getPanelState(), parentComponent.getColorState()));
-          } else if (state instanceof MandelDoubleDoubleState cast && state.getCurrentZoom() <= PRECISION_SWITCH_ZOOM_LEVEL) {
-              final MandelState newMandelState = new MandelDoubleState(cast);
-              parentComponent.setMandelState(newMandelState);
-              parentComponent.setImageGenerator(new MandelbrotBlockImageGenerator(parentComponent.getImageGenerator(), newMandelState, parentComponent.getPanelState(), parentComponent.getColorState()));
-          }
+		  parentComponent.changeView(() -> {
+			parentComponent.getMandelState().zoomIn(1);
+			parentComponent.updatePrecision();
+		  });
 		  parentComponent.generateAndSaveImageIfToggled();
 		  parentComponent.repaint();
 		}
 		break;
 	  case 'h':
-		parentComponent.getMandelState().saveCurrentZoom();
-		parentComponent.getMandelState().resetCoordinates();
-		parentComponent.setNeedsRender();
+		parentComponent.changeView(() -> {
+		  parentComponent.getMandelState().saveCurrentZoom();
+		  parentComponent.getMandelState().resetCoordinates();
+		  parentComponent.updatePrecision();
+		});
 		break;
 	  case '+':
-		parentComponent.getMandelState().incrementZoomFactor();
-		parentComponent.setNeedsRender();
+		parentComponent.changeView(() -> parentComponent.getMandelState().incrementZoomFactor());
 		break;
 	  case '-':
-		parentComponent.getMandelState().decrementZoomFactor();
-		parentComponent.setNeedsRender();
+		parentComponent.changeView(() -> parentComponent.getMandelState().decrementZoomFactor());
 		break;
 	  case 'c': {
 		final Color[] palette = paletteState.getNextPalette();
 		parentComponent.getColorState().setColours(palette);
 		miniPanel.getColorState().setColours(palette);
 
-		parentComponent.getMandelState().clearColorCache();
-		parentComponent.setNeedsRender();
+		parentComponent.changeView(() -> parentComponent.getMandelState().clearColorCache());
 
 		miniPanel.getMiniMandelState().clearColorCache();
 		miniPanel.setNeedsRender();
@@ -123,8 +200,7 @@ public class MandelKeyListener extends KeyAdapter {
 		parentComponent.getColorState().setColours(palette);
 		miniPanel.getColorState().setColours(palette);
 
-		parentComponent.getMandelState().clearColorCache();
-		parentComponent.setNeedsRender();
+		parentComponent.changeView(() -> parentComponent.getMandelState().clearColorCache());
 
 		miniPanel.getMiniMandelState().clearColorCache();
 		miniPanel.setNeedsRender();
@@ -135,8 +211,7 @@ public class MandelKeyListener extends KeyAdapter {
 		parentComponent.getColorState().setColours(palette);
 		miniPanel.getColorState().setColours(palette);
 
-		parentComponent.getMandelState().clearColorCache();
-		parentComponent.setNeedsRender();
+		parentComponent.changeView(() -> parentComponent.getMandelState().clearColorCache());
 
 		miniPanel.getMiniMandelState().clearColorCache();
 		miniPanel.setNeedsRender();
@@ -61,7 +61,11 @@ public class MiniPanel extends JPanel {
 	miniImageGen.setPos(re, imag);
   }
 
+  /**
+   * Cancels the frame being generated for the previous position.
+   */
   public void setNeedsRender() {
+	miniImageGen.cancel();
 	renderTask.setNeedsRender(true);
   }
 }
\ No newline at end of file
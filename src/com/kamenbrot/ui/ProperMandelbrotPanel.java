@@ -1,15 +1,23 @@
 package com.kamenbrot.ui;
 
+import com.kamenbrot.fractals.mandelbrot.CpuMandelbrot;
+import com.kamenbrot.fractals.mandelbrot.InteriorCheck;
+import com.kamenbrot.fractals.mandelbrot.MandelbrotFormula;
 import com.kamenbrot.generators.ImageGenerator;
 import com.kamenbrot.generators.MandelbrotBlockImageGenerator;
+import com.kamenbrot.generators.MarianiSilverImageGenerator;
 import com.kamenbrot.generators.PanelRenderer;
 import com.kamenbrot.io.MandelOutput;
 import com.kamenbrot.state.ColourState;
 import com.kamenbrot.state.GenericMandelState;
 import com.kamenbrot.state.MandelDoubleDoubleState;
 import com.kamenbrot.state.MandelDoubleState;
+import com.kamenbrot.state.MandelFixedPointState;
+import com.kamenbrot.state.MandelFloatExpState;
+import com.kamenbrot.state.MandelPerturbationState;
 import com.kamenbrot.state.MandelState;
 import com.kamenbrot.state.PaletteState;
+import com.kamenbrot.state.PrecisionPolicy;
 import com.kamenbrot.state.PanelState;
 
 import javax.swing.*;
@@ -19,18 +27,58 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.Toolkit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
 
 public class ProperMandelbrotPanel extends JPanel {
 
+    /**
+     * Quiet time after the last navigation input before the preview frame is replaced by a full one
+     */
+    private static final int SETTLE_DELAY_MS = 150;
+    /**
+     * Max iterations of the first slice of a progressive frame, every following slice doubles them
+     */
+    private static final int FIRST_SLICE_ITERATIONS = 256;
+
     private PanelState panelState;
-    private MandelState mandelState;
+    /**
+     * Only changed on the render thread between frames, see {@link #changeView(Runnable)}. Read on the event dispatch
+     * thread for showing the view and for input.
+     */
+    private volatile MandelState mandelState;
     private ColourState colourState;
-    private ImageGenerator imageGenerator;
+    private volatile ImageGenerator imageGenerator;
     private boolean showInfo;
     private PanelRenderer.RenderTask renderTask;
     private final PaletteState paletteState;
+    private volatile PrecisionPolicy precisionPolicy = PrecisionPolicy.DEFAULT;
+    private final Timer settleTimer;
+    /**
+     * Held while a frame is generated, nothing else may touch its image meanwhile
+     */
+    private final Object renderLock = new Object();
+    /**
+     * Whole pixels the view is to be panned by before the next frame. Pans are applied on the render thread so the
+     * frame being generated keeps the view it started with and the next one can be shifted from it.
+     */
+    private int pendingPanX;
+    private int pendingPanY;
+    /**
+     * Changes of the view in input order, applied on the render thread before the next frame. Pans made after a change
+     * is queued are queued behind it so they move the view the input saw.
+     */
+    private final List<Runnable> pendingChanges = new ArrayList<>();
+    /**
+     * Whether a render other than a pan was asked for since the last frame, the pixels kept by a pan might be stale then
+     */
+    private boolean fullFrame;
+    /**
+     * Guards the pending pan, changes and {@link #fullFrame}
+     */
+    private final Object inputLock = new Object();
 
     public ProperMandelbrotPanel(ForkJoinPool pool, PanelRenderer renderer, PaletteState paletteState) {
         this.panelState = new PanelState(800, 600);
@@ -40,6 +88,8 @@ public class ProperMandelbrotPanel extends JPanel {
         final Dimension dim = Toolkit.getDefaultToolkit().getScreenSize();
         this.setLocation(dim.width / 2 - this.getSize().width / 2, dim.height / 2 - this.getSize().height / 2);
         this.paletteState = paletteState;
+        this.settleTimer = new Timer(SETTLE_DELAY_MS, e -> changeView(() -> mandelState.setInteractive(false)));
+        settleTimer.setRepeats(false);
         generateAndSaveImageIfToggled();
         this.renderTask = renderer.addRenderTask(() -> {
             generateAndSaveImageIfToggled();
@@ -47,10 +97,113 @@ public class ProperMandelbrotPanel extends JPanel {
         });
     }
 
+    /**
+     * Cancels the frame being generated, it is superseded by a frame of the current state. What it generated so far
+     * stays on screen until then.
+     */
     public void setNeedsRender() {
+        synchronized (inputLock) {
+            fullFrame = true;
+        }
+        imageGenerator.cancel();
+        renderTask.setNeedsRender(true);
+    }
+
+    /**
+     * Changes the state or the generator of the view on the render thread before the next frame, the frame being
+     * generated is cancelled. Whatever a frame reads of the view may only be changed this way, so a frame sees one view
+     * from start to end and nothing it derives from it, such as the coordinate tables, can go stale under it.
+     */
+    public void changeView(Runnable change) {
+        queueChange(change);
+        setNeedsRender();
+    }
+
+    private void queueChange(Runnable change) {
+        synchronized (inputLock) {
+            if (pendingPanX != 0 || pendingPanY != 0) {
+                // the input before the change saw the view panned already
+                final int dx = pendingPanX;
+                final int dy = pendingPanY;
+                pendingChanges.add(() -> mandelState.pan(dx, dy));
+                pendingPanX = 0;
+                pendingPanY = 0;
+            }
+            pendingChanges.add(change);
+            fullFrame = true;
+        }
+    }
+
+    /**
+     * Pans the view by whole pixels, a positive dx brings in what was right of it. The frame being generated is not
+     * cancelled, the next one only generates what the pan exposed.
+     */
+    public void pan(int dx, int dy) {
+        synchronized (inputLock) {
+            if (pendingChanges.isEmpty()) {
+                pendingPanX += dx;
+                pendingPanY += dy;
+            } else {
+                pendingChanges.add(() -> mandelState.pan(dx, dy));
+            }
+        }
         renderTask.setNeedsRender(true);
     }
 
+    /**
+     * Applies the pending changes and then the pending pan, through the generator so it keeps what is still in view
+     * unless the next frame has to be generated in full anyway. Called on the render thread holding the render lock.
+     *
+     * @return whether the view was panned
+     */
+    private boolean applyInput() {
+        final List<Runnable> changes;
+        final boolean full;
+        final int dx, dy;
+        synchronized (inputLock) {
+            changes = List.copyOf(pendingChanges);
+            pendingChanges.clear();
+            full = fullFrame;
+            fullFrame = false;
+            dx = pendingPanX;
+            dy = pendingPanY;
+            pendingPanX = 0;
+            pendingPanY = 0;
+        }
+        changes.forEach(Runnable::run);
+        final ImageGenerator generator = imageGenerator;
+        if (dx == 0 && dy == 0) return false;
+        if (!full && generator instanceof MandelbrotBlockImageGenerator mandelbrotGenerator) {
+            mandelbrotGenerator.pan(dx, dy);
+        } else {
+            mandelState.pan(dx, dy);
+        }
+        return true;
+    }
+
+    /**
+     * Resizes the image of the view once the frame being generated into the old one gave up.
+     */
+    public void resizeView(int width, int height) {
+        imageGenerator.cancel();
+        synchronized (renderLock) {
+            panelState.setWidthAndHeight(width, height);
+            imageGenerator.resizeImage(width, height);
+            mandelState.setMandelWidth(width);
+            mandelState.setMandelHeight(height);
+        }
+        setNeedsRender();
+    }
+
+    /**
+     * Renders previews until the navigation input has been quiet for {@link #SETTLE_DELAY_MS}, then a full frame. Takes
+     * effect with the next {@link #changeView(Runnable)}.
+     */
+    public void beginInteraction() {
+        queueChange(() -> mandelState.setInteractive(true));
+        settleTimer.restart();
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
         ((Graphics2D) g).setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
@@ -65,17 +218,143 @@ public class ProperMandelbrotPanel extends JPanel {
             g.drawString(String.format("Current center x[%s], y[%s]", stateCast.getCenterX(), stateCast.getCenterY()), textSpacing, textSpacing * i++);
             g.drawString(String.format("Press '+' or '-' to adjust zoom factor. Currently %.2f. Current mandelbrot: %s", mandelState.getZoomFactor(), mandelState.getClass().getSimpleName()), textSpacing, textSpacing * i++);
             g.drawString(String.format("Press 'H' to reset zoom and mouse wheel to adjust zoom. Current zoom %.2fx.", mandelState.getCurrentZoom()), textSpacing, textSpacing * i++);
+            g.drawString("Drag or press the arrow keys to pan, click to centre", textSpacing, textSpacing * i++);
             g.drawString("Press 'S' to save on zoom. Currently " + (mandelState.isSaveToggled() ? "active" : "inactive"), textSpacing, textSpacing * i++);
             g.drawString(String.format("Current palette '%s'. Press 'c' to cycle colours", paletteState.getCurrentPaletteLabel()), textSpacing, textSpacing * i++);
             g.drawString(String.format("Press 'v' to increase and 'b' to decrease palette size. Current palette size %d", paletteState.getPaletteSize()), textSpacing, textSpacing * i++);
+            g.drawString("Press 'p' to iterate deep zooms at full precision instead of perturbation. Currently " + (precisionPolicy == PrecisionPolicy.EXACT ? "active" : "inactive"), textSpacing, textSpacing * i++);
+            g.drawString("Press 'm' to toggle rectangle subdivision. Currently " + subdivisionLabel(), textSpacing, textSpacing * i++);
+            g.drawString(String.format("Press 'f' to cycle formulas or 'F' to enter one. Current formula %s", mandelState.getFormula().getName()), textSpacing, textSpacing * i++);
+            g.drawString("Press 'd' to shade by distance estimation. Currently " + distanceLabel(), textSpacing, textSpacing * i++);
+            g.drawString(String.format("Press ']' to double and '[' to halve max iterations. Currently %d of %d", mandelState.getMaxIterations(), panelState.getMaxIterations()), textSpacing, textSpacing * i++);
+            g.drawString("Press 'I' to deepen frames progressively in iteration slices. Currently " + (mandelState.isProgressiveToggled() ? "active" : "inactive"), textSpacing, textSpacing * i++);
+            g.drawString("Press 'r' to predict the interior from the last frame and only verify its boundary. Currently " + predictionLabel(), textSpacing, textSpacing * i++);
+            g.drawString(String.format("Interior check skipped %d pixels in the last frame", InteriorCheck.getShortCircuited()), textSpacing, textSpacing * i++);
+            if (mandelState.getFormula() == MandelbrotFormula.INSTANCE && !mandelState.isJuliaToggled()) {
+                g.drawString(String.format("Period of the cycle at the center %d, 0 if it escapes or none was found", centerPeriod(stateCast)), textSpacing, textSpacing * i++);
+            }
         }
     }
 
+    /**
+     * @return period of the attracting cycle of the center of the view, found at double precision
+     */
+    private int centerPeriod(GenericMandelState<?> state) {
+        return CpuMandelbrot.findPeriod(0.0, 0.0, panelState.getMaxIterations(), state.getCenterX().doubleValue(),
+                state.getCenterY().doubleValue(), CpuMandelbrot.periodicityTolerance(state));
+    }
+
+    /**
+     * @return whether frames are shaded by distance, which the formula may not support at the precision of the view
+     */
+    private String distanceLabel() {
+        if (!mandelState.isDistanceToggled()) return "inactive";
+        if (!mandelState.getFormula().hasDistanceKernel(mandelState)) return "inactive, not available for this formula and zoom";
+        return "active";
+    }
+
+    /**
+     * @return whether rectangles are filled from their borders, which needs a formula whose set is connected
+     */
+    private String subdivisionLabel() {
+        if (!mandelState.isSubdivisionToggled()) return "inactive";
+        if (!mandelState.getFormula().isConnected()) return "inactive, the set of this formula may be disconnected";
+        return "active";
+    }
+
+    /**
+     * @return whether the interior is predicted, which needs a formula whose set has no holes
+     */
+    private String predictionLabel() {
+        if (!mandelState.isPredictionToggled()) return "inactive";
+        if (!mandelState.getFormula().isFull()) return "inactive, the set of this formula may have holes";
+        return "active";
+    }
+
     public void generateAndSaveImageIfToggled() {
+        synchronized (renderLock) {
+            final boolean panned = applyInput();
+            final ImageGenerator generator = imageGenerator;
+            InteriorCheck.resetShortCircuited();
+            generateSlice(generator, panned);
+            // a cancelled frame is left to the render that cancelled it
+            if (!generator.isComplete() || mandelState.isInteractive()) return;
+            if (mandelState.isSaveToggled()) {
+                // saved frames are deepened to the full iterations straight away
+                while (mandelState.getMaxIterations() < panelState.getMaxIterations()) {
+                    generateSlice(generator, false);
+                    if (!generator.isComplete()) return;
+                }
+                MandelOutput.saveImage(panelState.getOutputDir(), generator.getImage());
+            } else if (mandelState.getMaxIterations() < panelState.getMaxIterations()) {
+                renderTask.setNeedsRender(true);
+            }
+        }
+    }
+
+    /**
+     * Deepens the current frame towards the max iterations of the panel if it still shows the same view, by a slice if
+     * it is progressive and its pixels are resumable. Otherwise starts a new frame, at the first slice if progressive.
+     * A panned frame stays at the max iterations of the last one, whose pixels it keeps.
+     */
+    private void generateSlice(ImageGenerator imageGenerator, boolean panned) {
+        final int maxIterations = panelState.getMaxIterations();
+        final int current = mandelState.getMaxIterations();
+        if (current < maxIterations && imageGenerator instanceof MandelbrotBlockImageGenerator generator) {
+            final int next = mandelState.isProgressiveToggled() && generator.isResumable() ? Math.min(current * 2, maxIterations) : maxIterations;
+            if (generator.deepen(next)) return;
+        }
+        if (!panned) {
+            mandelState.setMaxIterations(mandelState.isProgressiveToggled() ? Math.min(FIRST_SLICE_ITERATIONS, maxIterations) : maxIterations);
+        } else if (current > maxIterations) {
+            mandelState.setMaxIterations(maxIterations);
+        }
         imageGenerator.generateImage();
-        if (mandelState.isSaveToggled()) {
-            MandelOutput.saveImage(panelState.getOutputDir(), imageGenerator.getImage());
+    }
+
+    /**
+     * Switches between perturbation and full precision per pixel iteration for deep zooms, keeping the view. Only to be
+     * called from a change, see {@link #changeView(Runnable)}.
+     */
+    public void togglePrecisionPolicy() {
+        MandelState newMandelState = mandelState;
+        if (precisionPolicy == PrecisionPolicy.DEFAULT) {
+            this.precisionPolicy = PrecisionPolicy.EXACT;
+            if (newMandelState instanceof MandelFloatExpState cast) newMandelState = new MandelPerturbationState(cast);
+            if (newMandelState instanceof MandelPerturbationState cast) newMandelState = new MandelFixedPointState(cast);
+        } else {
+            this.precisionPolicy = PrecisionPolicy.DEFAULT;
+            if (newMandelState instanceof MandelFixedPointState cast) newMandelState = new MandelPerturbationState(cast);
+        }
+        if (newMandelState != mandelState) {
+            this.mandelState = newMandelState;
+            setImageGenerator(newMandelbrotGenerator(newMandelState));
+        }
+        updatePrecision();
+    }
+
+    /**
+     * Moves the state to the cheapest precision that still resolves its pixels. Julia views keep the precision they
+     * were opened with since their parameter is typed to it. Only to be called from a change, see
+     * {@link #changeView(Runnable)}.
+     */
+    public void updatePrecision() {
+        if (mandelState.isJuliaToggled()) return;
+        final MandelState newMandelState = precisionPolicy.select(mandelState);
+        if (newMandelState != mandelState) {
+            this.mandelState = newMandelState;
+            setImageGenerator(newMandelbrotGenerator(newMandelState));
+        }
+    }
+
+    /**
+     * @return generator for the mandelbrot set sharing the image of the current one, subdividing if toggled in the state
+     */
+    public MandelbrotBlockImageGenerator newMandelbrotGenerator(MandelState mandelState) {
+        if (mandelState.isSubdivisionToggled()) {
+            return new MarianiSilverImageGenerator(imageGenerator, mandelState, panelState, colourState);
         }
+        return new MandelbrotBlockImageGenerator(imageGenerator, mandelState, panelState, colourState);
     }
 
     public ImageGenerator getImageGenerator() {
@@ -98,8 +377,14 @@ public class ProperMandelbrotPanel extends JPanel {
         return showInfo;
     }
 
+    /**
+     * Replaces the generator, the frame the previous one is generating into the shared image is cancelled. Only to be
+     * called from a change, see {@link #changeView(Runnable)}.
+     */
     public void setImageGenerator(ImageGenerator imageGenerator) {
+        final ImageGenerator previous = this.imageGenerator;
         this.imageGenerator = imageGenerator;
+        previous.cancel();
     }
 
     public void setShowInfo(boolean showInfo) {